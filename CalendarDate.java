@@ -72,6 +72,17 @@ public class CalendarDate {
       setDate(canonicalForm); 
    }
 
+   /** Initializes this object to the date having the given year, month and
+   *** day numbers (e.g., 1967, 1 and 15 for January 15, 1967).  If these do
+   *** not describe a valid date, an IllegalArgumentException is thrown.
+   */
+   public CalendarDate(int year, int month, int day) {
+      if (!CalendarDateOperations.isValidMonthDayYear(month, day, year)) {
+         throw new IllegalArgumentException(ILLEGAL_ARGUMENT_EXCEPTION_MESSAGE);
+      }
+      setDateTo(month, day, year);
+   }
+
 
    public void reset() {
       year = 1; month = 1; day = 1;
@@ -180,6 +191,13 @@ public class CalendarDate {
       return "" + getYear() + DASH + getMonth() + DASH + getDay();
    }
 
+   /** Returns this date as the int yyyymmdd, e.g., 19670115 for January 15,
+   *** 1967.  Such ints compare in the same way as the dates.
+   **/
+   int toKey() {
+      return getYear() * 10000 + getMonth() * 100 + getDay();
+   }
+
    /** Returns true if this date and the specified date are equal, false
    *** otherwise.  (Two dates are equal if, and only if, they represent the
    *** same calendar date (such as April 25, 1956).)
@@ -273,6 +291,7 @@ public class CalendarDate {
                         result = CalendarDateParsers.parse_y_m_d(dateValue);
                         if(!isValidDateInCanonicalForm(result)) {
                            result = DEFAULT_VALUE_IN_CANONICAL_FORM;
+                           EventMetrics.recordParseFailure();
                            //throw new IllegalArgumentException(ILLEGAL_ARGUMENT_EXCEPTION_MESSAGE);
                         }
                      }
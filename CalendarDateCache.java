@@ -0,0 +1,190 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** An instance of this class is a bounded cache mapping date strings, as
+**  they appear in files of events, to the dates they describe, so that a
+**  date string that recurs (as they do heavily in real feeds, e.g. a batch
+**  stamped with the day's date) is parsed only once.  A CalendarDateParser
+**  given a cache (see CalendarDateParser.setCache()) consults it before
+**  parsing and adds to it what it parses; a cache may be shared by the
+**  parsers of several loading threads, as it is safe for concurrent use.
+**
+**  As a CalendarDate can be changed (by reset()), the cache does not hold
+**  CalendarDate objects but packed values, each giving the year, month and
+**  day and the form (as numbered by CalendarDateParser) in which the string
+**  describes them; a new CalendarDate is made upon each hit.  Only strings
+**  describing valid dates are cached.
+**
+**  When the cache is full, the entry to be evicted is chosen by the clock
+**  (second chance) algorithm: the entries are arranged in a ring, and the
+**  hand sweeps around it, sparing (but unmarking) each entry that has been
+**  used since the hand last passed it.  Lookups take no lock; the marking
+**  of entries as used is not synchronized, so an entry may now and then be
+**  evicted a sweep early, which is harmless.  The cache counts its hits,
+**  misses and evictions.
+*/
+public class CalendarDateCache {
+
+   // class constant
+   // --------------
+   public static final int MISSING = -1;   // the result of get() upon a miss
+
+   private static final int FORM_BITS = 3;
+
+
+   // instance variables
+   // ------------------
+   private final ConcurrentHashMap<String, Entry> index;  // the entries, by key
+   private final String[] ring;    // the keys, in the order swept by the hand
+   private int count;              // # of keys in ring[] (guarded by this)
+   private int hand;               // the position of the hand (guarded by this)
+
+   private final LongAdder hits;
+   private final LongAdder misses;
+   private final LongAdder evictions;
+
+
+   // constructor
+   // -----------
+
+   /** Initializes this cache to be empty and to hold at most the specified
+   **  number of entries.
+   */
+   public CalendarDateCache(int capacity) {
+      if (capacity < 1) {
+         throw new IllegalArgumentException("Illegal capacity");
+      }
+      index = new ConcurrentHashMap<String, Entry>(2 * capacity);
+      ring = new String[capacity];
+      count = 0;
+      hand = 0;
+      hits = new LongAdder();
+      misses = new LongAdder();
+      evictions = new LongAdder();
+   }
+
+   // observers
+   // ---------
+
+   /** Returns the most entries this cache can hold.
+   */
+   public int capacityOf() { return ring.length; }
+
+   /** Returns the number of entries in this cache.
+   */
+   public int sizeOf() { return index.size(); }
+
+   /** Returns the number of lookups that found an entry.
+   */
+   public long hitsOf() { return hits.sum(); }
+
+   /** Returns the number of lookups that found no entry.
+   */
+   public long missesOf() { return misses.sum(); }
+
+   /** Returns the number of entries evicted to make room for others.
+   */
+   public long evictionsOf() { return evictions.sum(); }
+
+   /** Returns the proportion of lookups that found an entry (0 if there
+   **  have been none).
+   */
+   public double hitRatioOf() {
+      long h = hits.sum();
+      long total = h + misses.sum();
+      return (total == 0) ? 0.0 : (double) h / total;
+   }
+
+   /** Returns a description of the size and counts of this cache, e.g.
+   **  "size=812/4096 hits=99188 misses=812 evictions=0".
+   */
+   public String toString() {
+      return "size=" + sizeOf() + "/" + capacityOf() + " hits=" + hitsOf() +
+             " misses=" + missesOf() + " evictions=" + evictionsOf();
+   }
+
+   // lookup and insertion
+   // --------------------
+
+   /** Returns the packed value cached for the given date string, or MISSING
+   **  if there is none.
+   */
+   public int get(String dateValue) {
+      Entry e = index.get(dateValue);
+      int result;
+      if (e == null) {
+         misses.increment();
+         result = MISSING;
+      }
+      else {
+         hits.increment();
+         // (an entry in constant use is not written to over and over)
+         if (!e.used) {
+            e.used = true;
+         }
+         result = e.value;
+      }
+      return result;
+   }
+
+   /** Caches the given packed value (see pack()) for the given date string,
+   **  evicting an entry if the cache is full.  (If the string is already
+   **  cached, nothing is done.)
+   */
+   public synchronized void put(String dateValue, int packed) {
+      if (!index.containsKey(dateValue)) {
+         if (count < ring.length) {
+            ring[count] = dateValue;
+            count = count + 1;
+         }
+         else {
+            Entry victim = index.get(ring[hand]);
+            while (victim.used) {
+               victim.used = false;
+               hand = (hand + 1) % ring.length;
+               victim = index.get(ring[hand]);
+            }
+            index.remove(ring[hand]);
+            evictions.increment();
+            ring[hand] = dateValue;
+            hand = (hand + 1) % ring.length;
+         }
+         index.put(dateValue, new Entry(packed));
+      }
+   }
+
+   // packing
+   // -------
+
+   /** Returns the packed value giving the date described by the given
+   **  canonical form (YYYYMMDD) and the form (as numbered by
+   **  CalendarDateParser) of the string describing it.
+   */
+   public static int pack(String canonical, int form) {
+      return (Integer.parseInt(canonical) << FORM_BITS) | form;
+   }
+
+   /** Returns the date given by the given packed value (a new object).
+   */
+   public static CalendarDate dateOf(int packed) {
+      int yyyymmdd = packed >>> FORM_BITS;
+      return new CalendarDate(yyyymmdd / 10000, yyyymmdd / 100 % 100, yyyymmdd % 100);
+   }
+
+   /** Returns the form given by the given packed value.
+   */
+   public static int formOf(int packed) {
+      return packed & ((1 << FORM_BITS) - 1);
+   }
+
+   /* An entry of the cache: a packed value, and whether it has been used
+   ** since the hand last passed it.
+   */
+   private static class Entry {
+      final int value;
+      boolean used;
+
+      Entry(int value) { this.value = value; }
+   }
+
+}
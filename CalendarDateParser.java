@@ -0,0 +1,312 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/** An instance of this class parses date strings in any of the seven forms
+**  accepted by CalendarDate (see CalendarDateParsers), keeping account of
+**  its work: how many strings were recognized in each form, and how many
+**  (and, up to a limit, which) strings were rejected because they are not
+**  in any of the forms.  It is meant for bulk loading (see EventLoader),
+**  where a bad date should be noticed rather than silently replaced.
+**
+**  A parser is either strict or lenient.  A strict parser rejects a bad date
+**  string by throwing an IllegalArgumentException; a lenient one, like the
+**  CalendarDate(String) constructor, yields January 1, 1 instead.  Either
+**  way, the rejection is counted, and the string is added to the reject log
+**  unless the log already holds as many strings as its limit allows.
+**
+**  A parser may be made adaptive (see setAdaptive()), in which case it
+**  tries the form that recognized the previous string first, falling back
+**  to trying the forms in order only if that fails.  As the dates in a file
+**  are nearly always all in the same form, most strings are then parsed in
+**  a single attempt.  (No string is in two of the forms with different
+**  meanings, so the dates obtained are the same either way.)  The parser
+**  counts its attempts and how often its prediction held.
+**
+**  A parser may be given a cache (see setCache() and CalendarDateCache), in
+**  which case a string found in the cache is not parsed again; it is
+**  counted as recognized in the form in which it was first parsed, but not
+**  as an attempt or prediction.  Only strings describing valid dates are
+**  cached, so rejects are accounted for each time.
+**
+**  A parser is not safe for use by several threads at once; each loading
+**  thread should have a parser of its own (which is also what makes its
+**  predictions fit the file that the thread is loading).
+*/
+public class CalendarDateParser {
+
+   // class constants (for modes)
+   // ---------------------------
+   public static final int STRICT = 0;
+   public static final int LENIENT = 1;
+
+
+   // class constants (for the forms, in the order in which they are tried)
+   // ---------------------------------------------------------------------
+   public static final int YYYYMMDD = 0;
+   public static final int YMMDD = 1;
+   public static final int MONTH_D_Y = 2;
+   public static final int D_MONTH_Y = 3;
+   public static final int M_D_Y = 4;
+   public static final int D_MON_Y = 5;
+   public static final int Y_M_D = 6;
+
+   public static final int FORM_COUNT = 7;
+
+   private static final String[] FORM_NAMES =
+      {"YYYYMMDD", "yMMDD", "Month_d_y", "d_Month_y", "m_d_y", "d_Mon_y", "y_m_d"};
+
+   private static final int DEFAULT_LOG_LIMIT = 100;
+
+
+   // instance variables
+   // ------------------
+   private final int mode;         // STRICT or LENIENT
+   private final long[] hits;      // hits[f] is the # of strings recognized in form f
+   private long rejectCount;       // # of strings rejected
+   private final int logLimit;     // the most strings the reject log may hold
+   private final List<String> rejectLog;   // the first rejected strings
+
+   private boolean adaptive;       // whether the last form is tried first
+   private int lastForm;           // the form that recognized the last string
+   private long predictionHits;    // # of strings recognized by lastForm
+   private long predictionMisses;  // # of strings not recognized by lastForm
+   private long attempts;          // # of forms tried in all
+
+   private CalendarDateCache cache;   // consulted before parsing (or null)
+
+
+   // constructors
+   // ------------
+
+   /** Initializes this parser to be in the specified mode (STRICT or LENIENT)
+   **  and to keep a reject log of the default size.
+   */
+   public CalendarDateParser(int mode) { this(mode, DEFAULT_LOG_LIMIT); }
+
+   /** Initializes this parser to be in the specified mode and to keep a
+   **  reject log holding at most the specified number of strings.
+   */
+   public CalendarDateParser(int mode, int logLimit) {
+      if (mode != STRICT && mode != LENIENT) {
+         throw new IllegalArgumentException("Illegal parse mode value");
+      }
+      if (logLimit < 0) {
+         throw new IllegalArgumentException("Illegal reject log limit");
+      }
+      this.mode = mode;
+      this.logLimit = logLimit;
+      hits = new long[FORM_COUNT];
+      rejectCount = 0;
+      rejectLog = new ArrayList<String>();
+      adaptive = false;
+      lastForm = YYYYMMDD;
+      predictionHits = 0;
+      predictionMisses = 0;
+      attempts = 0;
+      cache = null;
+   }
+
+   // observers
+   // ---------
+
+   /** Returns the mode of this parser (STRICT or LENIENT).
+   */
+   public int modeOf() { return mode; }
+
+   /** Returns the number of strings recognized in the given form (one of the
+   **  form constants).
+   */
+   public long hitsOf(int form) { return hits[form]; }
+
+   /** Returns the number of strings rejected.
+   */
+   public long rejectCountOf() { return rejectCount; }
+
+   /** Returns the rejected strings that were logged (the first ones, up to
+   **  the limit of the log), in order of rejection.
+   */
+   public List<String> rejectLog() { return new ArrayList<String>(rejectLog); }
+
+   /** Returns true if and only if this parser is adaptive.
+   */
+   public boolean isAdaptive() { return adaptive; }
+
+   /** Returns the number of strings (since this parser was made adaptive)
+   **  recognized by the form that recognized the string before them.
+   */
+   public long predictionHitsOf() { return predictionHits; }
+
+   /** Returns the number of strings (since this parser was made adaptive)
+   **  not recognized by the form that recognized the string before them.
+   */
+   public long predictionMissesOf() { return predictionMisses; }
+
+   /** Returns the number of attempts (of one form each) made to parse
+   **  strings.
+   */
+   public long attemptsOf() { return attempts; }
+
+   /** Returns the cache consulted by this parser (null if there is none).
+   */
+   public CalendarDateCache cacheOf() { return cache; }
+
+   /** Returns the name of the given form (e.g., "m_d_y" for M_D_Y).
+   */
+   public static String nameOfForm(int form) { return FORM_NAMES[form]; }
+
+   /** Returns a description of the hits and rejects, e.g.
+   **  "YYYYMMDD=120 yMMDD=0 ... y_m_d=3 rejected=2".
+   */
+   public String toString() {
+      String result = "";
+      for (int form = 0; form < FORM_COUNT; form++) {
+         result = result + FORM_NAMES[form] + "=" + hits[form] + " ";
+      }
+      result = result + "rejected=" + rejectCount + " attempts=" + attempts;
+      if (adaptive) {
+         result = result + " predicted=" + predictionHits + "/" + (predictionHits + predictionMisses);
+      }
+      return result;
+   }
+
+   // mutators
+   // --------
+
+   /** Makes this parser adaptive (or not), as described above.
+   */
+   public void setAdaptive(boolean adaptive) { this.adaptive = adaptive; }
+
+   /** Sets the cache consulted by this parser (null for none).
+   */
+   public void setCache(CalendarDateCache cache) { this.cache = cache; }
+
+   // parsing
+   // -------
+
+   /** Returns the date described by the given string.  If the string is not
+   **  in any of the forms, it is rejected: a strict parser throws an
+   **  IllegalArgumentException, a lenient one returns January 1, 1.
+   */
+   public CalendarDate parse(String dateValue) {
+      int packed = (cache == null) ? CalendarDateCache.MISSING : cache.get(dateValue);
+      CalendarDate result;
+      if (packed != CalendarDateCache.MISSING) {
+         lastForm = CalendarDateCache.formOf(packed);
+         hits[lastForm] = hits[lastForm] + 1;
+         result = CalendarDateCache.dateOf(packed);
+      }
+      else {
+         result = parseUncached(dateValue);
+      }
+      return result;
+   }
+
+   // private methods
+   // ---------------
+
+   /* Returns the date described by the given string, as for parse(), trying
+   ** the forms (the predicted one first, if this parser is adaptive) and
+   ** caching the result, if there is a cache.
+   */
+   private CalendarDate parseUncached(String dateValue) {
+      String canonical = null;
+      if (adaptive) {
+         canonical = attempt(dateValue, lastForm);
+         if (canonical != null) {
+            predictionHits = predictionHits + 1;
+         }
+         else {
+            predictionMisses = predictionMisses + 1;
+         }
+      }
+      for (int form = 0; canonical == null && form < FORM_COUNT; form++) {
+         if (!adaptive || form != lastForm) {
+            canonical = attempt(dateValue, form);
+         }
+      }
+      CalendarDate result;
+      if (canonical != null) {
+         result = dateOf(canonical);
+         if (cache != null) {
+            cache.put(dateValue, CalendarDateCache.pack(canonical, lastForm));
+         }
+      }
+      else {
+         reject(dateValue);
+         result = new CalendarDate(1, 1, 1);
+      }
+      return result;
+   }
+
+   /* Returns the canonical form of the date described by the given string in
+   ** the given form (or null), counting the attempt and, if it succeeds, the
+   ** hit, and noting the form as the last to have succeeded.
+   */
+   private String attempt(String dateValue, int form) {
+      attempts = attempts + 1;
+      String result = canonicalFormOf(dateValue, form);
+      if (result != null) {
+         hits[form] = hits[form] + 1;
+         lastForm = form;
+      }
+      return result;
+   }
+
+   /* Counts (and, if there is room, logs) the given string as rejected, and
+   ** then, if this parser is strict, throws an IllegalArgumentException.
+   */
+   private void reject(String dateValue) {
+      rejectCount = rejectCount + 1;
+      if (rejectLog.size() < logLimit) {
+         rejectLog.add(dateValue);
+      }
+      EventMetrics.recordParseFailure();
+      if (mode == STRICT) {
+         throw new IllegalArgumentException("Invalid date value: " + dateValue);
+      }
+   }
+
+   /* Returns the canonical form (YYYYMMDD) of the date described by the given
+   ** string in the given form, or null if the string does not describe a
+   ** valid date in that form.
+   */
+   static String canonicalFormOf(String dateValue, int form) {
+      String result;
+      try {
+         if (form == YYYYMMDD) {
+            result = CalendarDateParsers.parse_YYYYMMDD(dateValue);
+         }
+         else if (form == YMMDD) {
+            result = CalendarDateParsers.parse_yMMDD(dateValue);
+         }
+         else if (form == MONTH_D_Y) {
+            result = CalendarDateParsers.parse_Month_d_y(dateValue);
+         }
+         else if (form == D_MONTH_Y) {
+            result = CalendarDateParsers.parse_d_Month_y(dateValue);
+         }
+         else if (form == M_D_Y) {
+            result = CalendarDateParsers.parse_m_d_y(dateValue);
+         }
+         else if (form == D_MON_Y) {
+            result = CalendarDateParsers.parse_d_Mon_y(dateValue);
+         }
+         else {
+            result = CalendarDateParsers.parse_y_m_d(dateValue);
+         }
+      }
+      catch (NumberFormatException e) {   // (a numeral too long for an int)
+         result = CalendarDateParsers.INVALID_RESULT;
+      }
+      return result.equals(CalendarDateParsers.INVALID_RESULT) ? null : result;
+   }
+
+   /* Returns the date described by the given string in canonical form.
+   */
+   private static CalendarDate dateOf(String canonical) {
+      return new CalendarDate(Integer.parseInt(canonical.substring(0, 4)),
+                              Integer.parseInt(canonical.substring(4, 6)),
+                              Integer.parseInt(canonical.substring(6, 8)));
+   }
+
+}
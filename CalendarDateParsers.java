@@ -58,7 +58,7 @@ public class CalendarDateParsers {
             // Now check for logical validity.
             // Compute the integers corresponding to year, month, and day
             int year = Integer.parseInt(yearStr);
-            int month = numberOfMonth(monthStr);
+            int month = Integer.parseInt(monthStr);
             int day = Integer.parseInt(dayStr);
             result = canonicalFormOf(year, month, day);
          }
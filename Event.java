@@ -41,13 +41,22 @@ public class Event {
    **  obtained from the toString() method.
    **
    */
-   public Event(String delimited) {
+   public Event(String delimited) { this(delimited, null); }
+
+   /** Initializes this event to be that described by the specified string, as
+   **  by the constructor above, except that the first part is parsed by the
+   **  given parser (see CalendarDateParser), so that a bad date is accounted
+   **  for (and, if the parser is strict, rejected) rather than silently taken
+   **  to be January 1, 1.  (A null parser is the same as none.)
+   */
+   public Event(String delimited, CalendarDateParser parser) {
       String[] field = delimited.split(DELIMITER);
       if(field.length != 3) {
+         EventMetrics.recordParseFailure();
          throw new IllegalArgumentException("invalid format");      
       } 
       else {
-         date = new CalendarDate(field[0]);
+         date = (parser == null) ? new CalendarDate(field[0]) : parser.parse(field[0]);
          principal = replaceAll(field[1],REPLACEMENT,DELIMITER);
          description = replaceAll(field[2],REPLACEMENT,DELIMITER);
       }
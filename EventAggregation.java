@@ -0,0 +1,283 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** An instance of this class holds the result of grouping the events of an
+**  EventCollection by some part of each event (its year, its decade, its
+**  month, its principal or its description) and, for each group, counting its events
+**  and finding the earliest and latest of their dates.  For example, grouping
+**  by year yields a histogram of the number of events per year.
+**
+**  Each group is identified by an int key: the year number (e.g., 1967), the
+**  decade number (e.g., 196 for the 1960s) or the month number (1 for
+**  January, etc.) when grouping by a part of the
+**  date, or otherwise the id that the collection's StringIndex assigned to
+**  the principal or description.  keys() lists the keys of the nonempty
+**  groups, and labelOf() describes a key in words.
+**
+**  An aggregation is computed by a single pass over the collection's
+**  primitive columns (see EventCollection.aggregate()).  An aggregation
+**  obtained from EventCollection.maintain() (or belonging to an EventView)
+**  is, moreover, kept up to date as events are inserted and removed.  Such
+**  an aggregation also counts the events of each group by date (in a
+**  TreeMap), so that when the event holding the earliest or latest date of
+**  its group is removed, the next earliest or latest is found without going
+**  over the group again; each insertion or removal costs O(log d), d being
+**  the number of distinct dates in the event's group.
+*/
+public class EventAggregation {
+
+   // class constants (for the ways of grouping events)
+   // -------------------------------------------------
+   public static final int BY_YEAR = 0;
+   public static final int BY_MONTH = 1;
+   public static final int BY_PRINCIPAL = 2;
+   public static final int BY_DESCRIPTION = 3;
+   public static final int BY_DECADE = 4;
+
+   private static final int MAX_YEAR = 9999;
+
+   // instance variables
+   // ------------------
+   private final int grouping;        // the way of grouping (BY_YEAR, etc.)
+   private final StringIndex labels;  // the dictionary giving the principals or
+                                      // descriptions (null for BY_YEAR/BY_MONTH)
+
+   private int[] counts;     // counts[key] is the # of events in the group,
+   private int[] earliest;   // earliest[key] and latest[key] the earliest and
+   private int[] latest;     // latest of their dates (as yyyymmdd)
+
+   private Map<Integer,TreeMap<Integer,Integer>> dateCounts;  // maps the key of
+                             // each nonempty group to the # of its events
+                             // having each date (null unless maintained)
+
+   // constructor
+   // -----------
+
+   /* Initializes this aggregation to have the specified way of grouping and
+   ** to contain no events.  The StringIndex supplies the labels of the groups
+   ** when grouping by principal or description.
+   */
+   EventAggregation(int grouping, StringIndex labels) {
+      if (grouping < BY_YEAR || grouping > BY_DECADE) {
+         throw new IllegalArgumentException("Illegal grouping value");
+      }
+      this.grouping = grouping;
+      this.labels = labels;
+      int n = (grouping == BY_YEAR) ? MAX_YEAR + 1 :
+              (grouping == BY_DECADE) ? MAX_YEAR / 10 + 1 :
+              (grouping == BY_MONTH) ? 13 : Math.max(16, labels.sizeOf());
+      counts = new int[n];
+      earliest = new int[n];
+      latest = new int[n];
+      dateCounts = null;
+   }
+
+   // observers
+   // ---------
+
+   /** Returns the way in which this aggregation groups events.
+   */
+   public int groupingOf() { return grouping; }
+
+   /** Returns the keys of the nonempty groups, in ascending order.
+   */
+   public int[] keys() {
+      int[] result = new int[counts.length];
+      int n = 0;
+      for (int key = 0; key < counts.length; key++) {
+         if (counts[key] != 0) {
+            result[n] = key;
+            n = n + 1;
+         }
+      }
+      return Arrays.copyOf(result, n);
+   }
+
+   /** Returns the key of the group of events having the given principal or
+   **  description (when grouping by principal or description), or -1 if
+   **  there is no such group.
+   */
+   public int keyOf(String label) {
+      int result = (labels == null) ? -1 : labels.find(label);
+      if (result >= counts.length || (result != -1 && counts[result] == 0)) {
+         result = -1;
+      }
+      return result;
+   }
+
+   /** Returns a description of the group having the given key: the year
+   **  (e.g., "1967"), the decade (e.g., "1960s"), the name of the month
+   **  (e.g., "JANUARY"), or the principal or description itself.
+   */
+   public String labelOf(int key) {
+      String result;
+      if (grouping == BY_YEAR) {
+         result = "" + key;
+      }
+      else if (grouping == BY_DECADE) {
+         result = (10 * key) + "s";
+      }
+      else if (grouping == BY_MONTH) {
+         result = CalendarDateOperations.nameOfMonthNumber(key);
+      }
+      else {
+         result = labels.stringOf(key);
+      }
+      return result;
+   }
+
+   /** Returns the number of events in the group having the given key.
+   */
+   public int countOf(int key) {
+      return (0 <= key && key < counts.length) ? counts[key] : 0;
+   }
+
+   /** Returns the earliest date among the events in the (nonempty) group
+   **  having the given key.
+   */
+   public CalendarDate earliestOf(int key) { return dateOf(earliest[key]); }
+
+   /** Returns the latest date among the events in the (nonempty) group
+   **  having the given key.
+   */
+   public CalendarDate latestOf(int key) { return dateOf(latest[key]); }
+
+   // mutators (for use by EventCollection)
+   // -------------------------------------
+
+   /* Adds to this aggregation the events whose dates (as yyyymmdd) and
+   ** principal and description ids are found in elements lo..hi-1 of the
+   ** given columns.  Each way of grouping has a loop of its own, so that
+   ** the body of each loop is a few array operations on ints.
+   */
+   void addAll(int[] dates, int[] principals, int[] descriptions, int lo, int hi) {
+      if (grouping == BY_YEAR) {
+         for (int i = lo; i < hi; i++) {
+            count(dates[i] / 10000, dates[i]);
+         }
+      }
+      else if (grouping == BY_DECADE) {
+         for (int i = lo; i < hi; i++) {
+            count(dates[i] / 100000, dates[i]);
+         }
+      }
+      else if (grouping == BY_MONTH) {
+         for (int i = lo; i < hi; i++) {
+            count(dates[i] / 100 % 100, dates[i]);
+         }
+      }
+      else {
+         int[] ids = (grouping == BY_PRINCIPAL) ? principals : descriptions;
+         ensureKeys(labels.sizeOf());
+         for (int i = lo; i < hi; i++) {
+            count(ids[i], dates[i]);
+         }
+      }
+   }
+
+   /* Adds to this aggregation one event having the given date (as yyyymmdd)
+   ** and principal and description ids.
+   */
+   void add(int date, int principal, int description) {
+      count(groupOf(date, principal, description), date);
+   }
+
+   /* Readies this (empty) aggregation to be maintained, i.e., to have
+   ** events removed from it, by having it count the events of each group by
+   ** date.
+   */
+   void keepDates() {
+      dateCounts = new HashMap<Integer,TreeMap<Integer,Integer>>();
+   }
+
+   /* Removes from this (maintained) aggregation one event (previously added)
+   ** having the given date (as yyyymmdd) and principal and description ids.
+   */
+   void remove(int date, int principal, int description) {
+      if (dateCounts == null) {
+         throw new IllegalStateException("aggregation is not maintained");
+      }
+      int key = groupOf(date, principal, description);
+      TreeMap<Integer,Integer> byDate = dateCounts.get(key);
+      int n = byDate.get(date) - 1;
+      if (n == 0) {
+         byDate.remove(date);
+      }
+      else {
+         byDate.put(date, n);
+      }
+      counts[key] = counts[key] - 1;
+      if (counts[key] == 0) {
+         dateCounts.remove(key);
+      }
+      else {
+         earliest[key] = byDate.firstKey();
+         latest[key] = byDate.lastKey();
+      }
+   }
+
+   // private methods
+   // ---------------
+
+   /* Returns the key of the group of an event having the given date (as
+   ** yyyymmdd) and principal and description ids, first making room for
+   ** the key if need be.
+   */
+   private int groupOf(int date, int principal, int description) {
+      int key;
+      if (grouping == BY_YEAR) {
+         key = date / 10000;
+      }
+      else if (grouping == BY_DECADE) {
+         key = date / 100000;
+      }
+      else if (grouping == BY_MONTH) {
+         key = date / 100 % 100;
+      }
+      else {
+         key = (grouping == BY_PRINCIPAL) ? principal : description;
+         ensureKeys(key + 1);
+      }
+      return key;
+   }
+
+   /* Counts one more event, having the given date (as yyyymmdd), in the
+   ** group having the given key.
+   */
+   private void count(int key, int date) {
+      if (counts[key] == 0) {
+         earliest[key] = date;
+         latest[key] = date;
+      }
+      else if (date < earliest[key]) {
+         earliest[key] = date;
+      }
+      else if (date > latest[key]) {
+         latest[key] = date;
+      }
+      counts[key] = counts[key] + 1;
+      if (dateCounts != null) {
+         dateCounts.computeIfAbsent(key, k -> new TreeMap<Integer,Integer>()).merge(date, 1, Integer::sum);
+      }
+   }
+
+   /* Makes room for the keys 0..n-1.
+   */
+   private void ensureKeys(int n) {
+      if (n > counts.length) {
+         int newLength = Math.max(n, 2 * counts.length);
+         counts = Arrays.copyOf(counts, newLength);
+         earliest = Arrays.copyOf(earliest, newLength);
+         latest = Arrays.copyOf(latest, newLength);
+      }
+   }
+
+   /* Returns the date described by the given int yyyymmdd.
+   */
+   private static CalendarDate dateOf(int date) {
+      return new CalendarDate(date / 10000, date / 100 % 100, date % 100);
+   }
+
+}
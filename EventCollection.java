@@ -1,29 +1,59 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /** An instance of this class represents a collection of events (i.e., instances
-**  of the Event class).  Initially, a collection is empty; events are placed 
+**  of the Event class).  Initially, a collection is empty; events are placed
 **  into a collection via calls to its insert() method.  Events in a collection
 **  are accessed via iteration.  A client can iterate over the events in a
 **  collection in any of four orders:
 **
 **  --the order in which the events were inserted into the collection
-**  --chronological order (i.e., the order in which the events occurred, 
+**  --chronological order (i.e., the order in which the events occurred,
 **    as based upon the calendar dates associated to them)
 **  --alphabetical order by principal
 **  --alphabetical order by description
 **
 **  Each of these corresponds to an iteration mode, the distinct values of which
-**  are named by public class constants.  The client, when wishing to begin an 
+**  are named by public class constants.  The client, when wishing to begin an
 **  iteration, must call the reset() method and indicate the desired mode via
-**  a parameter.  (The default mode is ITERATE_BY_INSERTION.)
+**  a parameter.  (The default mode is ITERATE_BY_INSERTION, which is also
+**  used if hasNext() or next() is called before reset() ever has been.)
+**  Other orders (e.g., by principal and then by date) are specified by
+**  passing an EventOrder in place of a mode.  Events that agree on every key
+**  of an order are visited in order of insertion.
+**
+**  An iteration (or a stream, obtained via stream()) covers the events in
+**  the collection when it began; later insertions and removals do not
+**  disturb it (see snapshot()).  Range, lookup, search and paging queries
+**  (between(), byPrincipal(), top(), etc.) and aggregations (aggregate(),
+**  maintain() and EventView) are also provided.  Orderings are computed from
+**  primitive columns of the events' dates and string ids, cached, and
+**  brought up to date incrementally.
 **
-**  Inserting an event into a collection aborts any active iteration over that
-**  collection, making the iteration inactive.  To begin a new iteration, one
-**  of the reset() methods must be called.
+**  A collection is not safe for use by several threads at once, and neither
+**  are its snapshots: a query on a snapshot may build an ordering (or index
+**  the strings of LazyEvents) in the collection's own caches, so snapshots
+**  are confined to the thread that uses the collection.  (A stream, once
+**  made by that thread, reads only the snapshot's arrays, and may be
+**  consumed by another; see ShardedEventCollection.)
 **
-**  An event collection has a fixed capacity (meaning the maximum number of
-**  events that can be inserted into it) that is established at creation.
-**  This capacity can be chosen by the client (by using the one-argument
-**  constructor) or it can be set to a default value (by using the no-argument
-**  constructor). 
+**  An event collection has a capacity (meaning the maximum number of events
+**  that can be inserted into it) that is established at creation, either
+**  by the client (by using the one-argument constructor) or to a default
+**  value (by using the no-argument constructor), and that can be raised by
+**  ensureCapacity().  A collection may also be made to ignore or reject
+**  duplicate events.  Removed events are marked with tombstones, and their
+**  space is reclaimed by compact().
 *
 * By: Alex Thoennes
 */
@@ -38,25 +68,73 @@ public class EventCollection {
    public static final int ITERATE_BY_DESCRIPTION = 4;
 
 
+   // class constants (for duplicates modes)
+   // ---------------------------------------
+   public static final int DUPLICATES_ALLOWED = 0;
+   public static final int DUPLICATES_IGNORED = 1;
+   public static final int DUPLICATES_REJECTED = 2;
+
+
    // class constant (for default collection capacity)
    // ------------------------------------------------
    private static final int DEFAULT_CAPACITY = 16;
 
 
+   // class constant (for compaction)
+   // -------------------------------
+   private static final double COMPACTION_THRESHOLD = 0.25;  // the proportion
+                              // of removed events that triggers compaction
+
+
+   // class constant (for insertions without a sequence number)
+   // ----------------------------------------------------------
+   private static final long NO_SEQUENCE = -1;
+
+
    // instance variables
    // ------------------
-   private int size;       // # of events in this collection
+   private int size;       // # of positions of events[] in use
 
    private Event[] events; // Array holding the events in this collection.
-                           // They are stored in event[0..size-1].
+                           // They are stored in event[0..size-1], except
+                           // for those marked in removedAt[] as removed.
+
+   private int[] removedAt;   // removedAt[k] is 0 if events[k] is in the
+                              // collection, and otherwise the version of the
+                              // collection at which it was removed
+   private int removedCount;  // # of k in 0..size-1 with removedAt[k] != 0
+   private int version;       // # of removals so far
+   private int generation;    // # of compactions so far (each of which
+                              // renumbers the positions of the events)
+
+   private int[] dates;        // dates[k] is events[k]'s date as yyyymmdd
+   private int[] principals;   // principals[k] is the id of events[k]'s principal
+   private int[] descriptions; // descriptions[k] is the id of events[k]'s description
+   private long[] sequences;   // sequences[k] is the sequence number given to
+                               // events[k] (see insert(Event, long)), or null
+                               // if none has been given
 
-   private boolean[] marked;   // marked[k] is true iff events[k] has already
-                               // been returned during the current iteration.
+   private StringIndex principalIndex;    // dictionaries assigning the ids in
+   private StringIndex descriptionIndex;  // principals[] and descriptions[]
+   private int indexed;        // # of positions whose ids have been assigned:
+                               // those of events[indexed..size-1] are pending
 
-   private int markedCount;    // # of marked events
+   private Map<EventOrder,int[]> orderings;  // maps an order to the positions
+                                            // 0..n-1 of events[], for some n,
+                                            // arranged in that order
+
+   private List<EventView> views;  // views kept up to date upon insertion
+
+   private int duplicatesMode;  // one of the DUPLICATES_ constants
+   private int duplicateCount;  // # of duplicates ignored or rejected
+   private int[] uniques;       // hash table of the events (unless duplicates
+                                // are allowed): each element is either 0
+                                // (empty) or k+1 for some position k
+
+   private Snapshot iteration; // the snapshot over which the active iteration
+                               // (if any) is proceeding; null if inactive
+   private boolean begun;      // true iff reset() has been called
 
-   private int iterationMode;  // the current iteration mode
-   
 
    // constructors
    // ------------
@@ -66,16 +144,45 @@ public class EventCollection {
    public EventCollection() { this(DEFAULT_CAPACITY); }
 
 
-   /** Initializes this collection to be empty and to have the specified 
+   /** Initializes this collection to be empty and to have the specified
    **  capacity.
    */
-   public EventCollection(int capacity) {
+   public EventCollection(int capacity) { this(capacity, DUPLICATES_ALLOWED); }
+
+
+   /** Initializes this collection to be empty, to have the specified capacity,
+   **  and to treat duplicate events according to the specified duplicates
+   **  mode.
+   */
+   public EventCollection(int capacity, int duplicatesMode) {
+      if (duplicatesMode < DUPLICATES_ALLOWED || duplicatesMode > DUPLICATES_REJECTED) {
+         throw new IllegalArgumentException("Illegal duplicates mode value");
+      }
+      this.duplicatesMode = duplicatesMode;
+      duplicateCount = 0;
+      if (duplicatesMode != DUPLICATES_ALLOWED) {
+         uniques = new int[tableLengthFor(capacity)];
+      }
+
       size = 0;
       events = new Event[capacity];
+      removedAt = new int[capacity];
+      removedCount = 0;
+      version = 0;
+      generation = 0;
 
-      marked = new boolean[capacity];
+      dates = new int[capacity];
+      principals = new int[capacity];
+      descriptions = new int[capacity];
+      sequences = null;
+      principalIndex = new StringIndex();
+      descriptionIndex = new StringIndex();
+      indexed = 0;
 
-      iterationMode = ITERATE_INACTIVE;
+      orderings = new HashMap<EventOrder,int[]>();
+      views = new ArrayList<EventView>();
+      iteration = null;
+      begun = false;
    }
 
    // observers
@@ -83,19 +190,7 @@ public class EventCollection {
 
    /** Returns the number of events in the collection.
    */
-   public int sizeOf() 
-   {
-	   int num = 0;
-	   for (int i = 0; i < events.length; i++)
-	   {
-		   if (events[i] != null)
-		   {
-			   num ++;
-		   }
-	   }
-	   size = num;
-	   return size; 
-   }
+   public int sizeOf() { return size - removedCount; }
 
 
    /** Returns the capacity of this collection, i.e., the maximum
@@ -104,22 +199,339 @@ public class EventCollection {
    public int capacityOf() { return events.length; }
 
 
-   // mutator
-   // -------
+   /** Returns the number of duplicate events that were ignored or rejected
+   **  (always zero if the duplicates mode is DUPLICATES_ALLOWED).
+   */
+   public int duplicateCountOf() { return duplicateCount; }
+
+
+   /** Returns a snapshot of this collection, i.e., an immutable view of the
+   **  events that are in the collection at the time of the call.  Events
+   **  inserted afterwards are not visible through the snapshot.  Taking a
+   **  snapshot costs O(1): because events are only ever appended to events[],
+   **  the snapshot needs to record nothing more than the current size and
+   **  the orderings cached at that moment.  (Likewise, a removal only marks
+   **  the event's position with the version of the collection, so the
+   **  snapshot need only record the current version to go on seeing it.)
+   */
+   public Snapshot snapshot() { return new Snapshot(this, size); }
+
+
+   // mutators
+   // --------
+
+   /** Raises the capacity of this collection, if necessary, so that it is at
+   **  least the specified number of events.  (Snapshots already taken are
+   **  not affected.)
+   */
+   public void ensureCapacity(int minCapacity) {
+      if (minCapacity > capacityOf()) {
+         int newCapacity = Math.max(minCapacity, 2 * capacityOf());
+         events = Arrays.copyOf(events, newCapacity);
+         removedAt = Arrays.copyOf(removedAt, newCapacity);
+         dates = Arrays.copyOf(dates, newCapacity);
+         principals = Arrays.copyOf(principals, newCapacity);
+         descriptions = Arrays.copyOf(descriptions, newCapacity);
+         if (sequences != null) {
+            sequences = Arrays.copyOf(sequences, newCapacity);
+         }
+         if (uniques != null) {
+            rehash();
+         }
+      }
+   }
 
    /** Inserts the given event into this collection.
-   **  If an iteration is active, it becomes inactive.
-   **  
+   **  An active iteration is not affected (see snapshot()).
+   **  If the event is a duplicate of one already in the collection, it is
+   **  not inserted unless duplicates are allowed; if they are rejected, an
+   **  IllegalArgumentException is thrown.
    */
    public void insert(Event e) {
-      if (sizeOf() == capacityOf()) {
+      insert(e, NO_SEQUENCE);
+   }
+
+   /* Inserts the given event into this collection, as for insert(Event),
+   ** giving it the specified sequence number.  (The kinds of collection made
+   ** up of several EventCollections number the events inserted into them
+   ** all together, so that their order of insertion can be restored across
+   ** the parts; see Snapshot.sequences().  Every event inserted into such a
+   ** part must be given a number, in increasing order.)
+   */
+   void insert(Event e, long sequence) {
+      long start = EventMetrics.start();
+      if (size == capacityOf() && removedCount != 0) {
+         compact();
+      }
+      if (size == capacityOf()) {
          throw new IllegalStateException("event collection already full");
       }
+      else if (uniques != null && isDuplicate(e)) {
+         duplicateCount = duplicateCount + 1;
+         EventMetrics.recordDuplicate();
+         if (duplicatesMode == DUPLICATES_REJECTED) {
+            throw new IllegalArgumentException("duplicate event");
+         }
+      }
+      else if (uniques == null && views.isEmpty() && (e instanceof LazyEvent || indexed != size)) {
+         // its principal and description are left to be indexed by catchUp()
+         events[size] = e;
+         dates[size] = e.dateOf().toKey();
+         number(size, sequence);
+         size = size + 1;
+         EventMetrics.recordInsert(start);
+      }
       else {
+    	  catchUp();
     	  events[size] = e;
+    	  dates[size] = e.dateOf().toKey();
+    	  principals[size] = principalIndex.add(e.principalOf(), size);
+    	  descriptions[size] = descriptionIndex.add(e.descriptionOf(), size);
+    	  indexed = size + 1;
+    	  for (EventView v : views) {
+    	     v.add(e, size, dates[size], principals[size], descriptions[size]);
+    	  }
+    	  if (uniques != null) {
+    	     uniques[slotOf(dates[size], principals[size], descriptions[size])] = size + 1;
+    	  }
+    	  number(size, sequence);
     	  size = size + 1;
+    	  EventMetrics.recordInsert(start);
       }
-   }  
+   }
+
+
+   /** Inserts the given events into this collection, in order.  If there is
+   **  not room for all of them (even after compaction), an
+   **  IllegalStateException is thrown and none is inserted.  (If duplicates
+   **  are rejected, an IllegalArgumentException is thrown upon the first
+   **  duplicate, the events preceding it having been inserted.)
+   */
+   public void insertAll(Event[] es) {
+      insertAll(Arrays.asList(es));
+   }
+
+   /** Inserts the given events into this collection, in the order in which
+   **  the collection's iterator supplies them, as for insertAll(Event[]).
+   */
+   public void insertAll(Collection<? extends Event> es) {
+      if (es.size() > capacityOf() - size && removedCount != 0) {
+         compact();
+      }
+      if (es.size() > capacityOf() - size) {
+         throw new IllegalStateException("event collection lacks room");
+      }
+      insertAll(es.iterator());
+   }
+
+   /** Inserts the events supplied by the given iterator into this collection,
+   **  in order.  If the collection becomes full before the iterator is
+   **  exhausted, an IllegalStateException is thrown, the events supplied so
+   **  far having been inserted.  Unless the collection keeps its events
+   **  unique or has views registered (in which case each event is inserted
+   **  as by insert()), the events are appended to the columns in one pass,
+   **  and the ids of their principals and descriptions are then assigned in
+   **  another (or, if any of them is a LazyEvent, left pending).  As with
+   **  insert(), cached orderings are left to be brought up to date when they
+   **  are next needed.
+   */
+   public void insertAll(Iterator<? extends Event> es) {
+      insertAll(es, null);
+   }
+
+   /* Inserts the given events into this collection, as for
+   ** insertAll(Iterator), giving the i-th of them the sequence number
+   ** numbers[i] (see insert(Event, long)).
+   */
+   void insertAll(List<? extends Event> es, long[] numbers) {
+      insertAll(es.iterator(), numbers);
+   }
+
+   /* Inserts the events supplied by the given iterator, as described for
+   ** insertAll(Iterator), giving the i-th of them the sequence number
+   ** numbers[i] (or none, if numbers is null).
+   */
+   private void insertAll(Iterator<? extends Event> es, long[] numbers) {
+      if (uniques != null || !views.isEmpty()) {
+         for (int i = 0; es.hasNext(); i++) {
+            insert(es.next(), (numbers == null) ? NO_SEQUENCE : numbers[i]);
+         }
+      }
+      else {
+         long start = EventMetrics.start();
+         int n = 0;
+         boolean pending = (indexed != size);   // whether to leave the ids pending
+         try {
+            while (es.hasNext()) {
+               if (size == capacityOf() && removedCount != 0) {
+                  compact();
+               }
+               if (size == capacityOf()) {
+                  throw new IllegalStateException("event collection already full");
+               }
+               Event e = es.next();
+               events[size] = e;
+               dates[size] = e.dateOf().toKey();
+               number(size, (numbers == null) ? NO_SEQUENCE : numbers[n]);
+               pending = pending || (e instanceof LazyEvent);
+               size = size + 1;
+               n = n + 1;
+            }
+         }
+         finally {
+            if (!pending) {
+               catchUp();
+            }
+            EventMetrics.recordInserts(start, n);
+         }
+      }
+   }
+
+   /** Returns the aggregation of the events in this collection by the
+   **  specified way of grouping (one of the constants of EventAggregation),
+   **  computed by a single pass over the collection.
+   */
+   public EventAggregation aggregate(int grouping) {
+      catchUp();
+      EventAggregation result = new EventAggregation(grouping, labelsOf(grouping));
+      if (removedCount == 0) {
+         result.addAll(dates, principals, descriptions, 0, size);
+      }
+      else {
+         for (int k = 0; k < size; k++) {
+            if (removedAt[k] == 0) {
+               result.add(dates[k], principals[k], descriptions[k]);
+            }
+         }
+      }
+      return result;
+   }
+
+   /** Returns the aggregation of the events in this collection by the
+   **  specified way of grouping, as for aggregate(), except that this
+   **  collection keeps the result up to date as events are inserted and
+   **  removed.
+   */
+   public EventAggregation maintain(int grouping) {
+      EventView v = new EventView(e -> true, grouping);
+      register(v);
+      return v.aggregation();
+   }
+
+   /** Registers the given view with this collection, bringing it up to date
+   **  with the events already in the collection.  Thereafter, each event
+   **  inserted into (or removed from) the collection is passed to the view.
+   */
+   public void register(EventView view) {
+      catchUp();
+      view.register(principalIndex, descriptionIndex);
+      refill(view);
+      views.add(view);
+   }
+
+   /** Removes from this collection an event having the same date, principal
+   **  and description as the given event (the earliest inserted of them, if
+   **  there are several), returning true, or, if there is no such event,
+   **  returns false.  An active iteration is not affected (see snapshot()).
+   */
+   public boolean remove(Event e) {
+      catchUp();
+      int k = positionOf(e);
+      if (k != -1) {
+         if (uniques != null) {
+            unhash(k);
+         }
+         version = version + 1;
+         removedAt[k] = version;
+         removedCount = removedCount + 1;
+         for (EventView v : views) {
+            v.remove(events[k], k, dates[k], principals[k], descriptions[k]);
+         }
+         if (removedCount > COMPACTION_THRESHOLD * size) {
+            compact();
+         }
+      }
+      return k != -1;
+   }
+
+   /** Replaces an event having the same date, principal and description as
+   **  the first given event (as chosen by remove()) with the second given
+   **  event, returning true, or, if there is no such event, returns false
+   **  (and inserts nothing).  The replacement takes its place at the end of
+   **  the order of insertion.  (If duplicates are rejected and the
+   **  replacement is a duplicate, the event is removed and an
+   **  IllegalArgumentException is thrown.)
+   */
+   public boolean replace(Event old, Event replacement) {
+      boolean result = remove(old);
+      if (result) {
+         insert(replacement);
+      }
+      return result;
+   }
+
+   /** Reclaims the space occupied by removed events, by moving the remaining
+   **  events (in order of insertion) to the front of the collection's arrays
+   **  and renumbering the cached orderings and the posting lists of the
+   **  string indexes accordingly, in O(n) time.  Snapshots already taken
+   **  (and thus an active iteration) are not affected.
+   */
+   public void compact() {
+      if (removedCount != 0) {
+         int capacity = capacityOf();
+         Event[] newEvents = new Event[capacity];
+         int[] newDates = new int[capacity];
+         int[] newPrincipals = new int[capacity];
+         int[] newDescriptions = new int[capacity];
+         long[] newSequences = (sequences == null) ? null : new long[capacity];
+         int[] newPositions = new int[size];
+         int n = 0;
+         int newIndexed = 0;
+         for (int k = 0; k < size; k++) {
+            if (k == indexed) {
+               newIndexed = n;
+            }
+            if (removedAt[k] == 0) {
+               newEvents[n] = events[k];
+               newDates[n] = dates[k];
+               newPrincipals[n] = principals[k];
+               newDescriptions[n] = descriptions[k];
+               if (sequences != null) {
+                  newSequences[n] = sequences[k];
+               }
+               newPositions[k] = n;
+               n = n + 1;
+            }
+            else {
+               newPositions[k] = -1;
+            }
+         }
+         Map<EventOrder,int[]> newOrderings = new HashMap<EventOrder,int[]>();
+         for (Map.Entry<EventOrder,int[]> entry : orderings.entrySet()) {
+            newOrderings.put(entry.getKey(), renumbered(entry.getValue(), newPositions));
+         }
+         principalIndex.renumber(newPositions);
+         descriptionIndex.renumber(newPositions);
+         for (EventView v : views) {
+            v.renumber(newPositions);
+         }
+
+         events = newEvents;
+         dates = newDates;
+         principals = newPrincipals;
+         descriptions = newDescriptions;
+         sequences = newSequences;
+         removedAt = new int[capacity];
+         orderings = newOrderings;
+         indexed = (indexed == size) ? n : newIndexed;
+         size = n;
+         removedCount = 0;
+         generation = generation + 1;
+         if (uniques != null) {
+            rehash();
+         }
+      }
+   }
 
 
    // iteration-related methods
@@ -127,41 +539,57 @@ public class EventCollection {
 
    /** Resets iteration to begin afresh, using the default iteration mode.
    */
-   public void reset() { 
+   public void reset() {
       reset(ITERATE_BY_INSERTION);   // Call the other reset() method!
    }
 
    /** Resets iteration to begin afresh, with the parameter specifying the
    **  iteration mode.  (An exception is thrown if the parameter value does
    **  not correspond to any of the four iteration mode values as defined by
-   **  the relevant class constants.)
+   **  the relevant class constants.)  The iteration covers exactly those
+   **  events in the collection at the time of the call.
    */
    public void reset(int iterMode) {
-      if (iterMode < 0 || iterMode > 4) 
-      {
-         throw new IllegalArgumentException("Illegal iteration mode value");
+      if (iterMode == ITERATE_INACTIVE) {
+         iteration = null;
+         begun = true;
       }
       else {
-         iterationMode = iterMode;
-         markedCount = 0;
-         fill(marked, 0, size, false); // Fill marked[0..size) with false's
+         reset(orderOf(iterMode));
       }
    }
 
-   
+   /** Resets iteration to begin afresh, with the events in the specified
+   **  order.  The iteration covers exactly those events in the collection at
+   **  the time of the call.
+   */
+   public void reset(EventOrder order) {
+      long start = EventMetrics.start();
+      EventRecordings.Reset recording = new EventRecordings.Reset();
+      recording.begin();
+      Snapshot s = snapshot();
+      s.reset(order);
+      iteration = s;
+      begun = true;
+      EventMetrics.recordReset(start);
+      if (recording.shouldCommit()) {
+         recording.order = order.toString();
+         recording.events = s.sizeOf();
+         recording.commit();
+      }
+   }
+
+
    /** Returns true if and only if there is an active iteration that has
-   **  at least one more element to iterate over.
+   **  at least one more element to iterate over.  (If reset() has never been
+   **  called, an iteration in the default mode is begun.)
    */
    public boolean hasNext()
    {
-	   if (markedCount != size)
-	   {
-		   return true;
-	   }
-	   else
-	   {
-		   return false;
-	   }
+      if (!begun) {
+         reset();
+      }
+      return iteration != null && iteration.hasNext();
    }
 
 
@@ -169,150 +597,1014 @@ public class EventCollection {
    **  pre-condition: hasNext()
    */
    public Event next() {
-	  int k;
-      if (iterationMode == ITERATE_BY_INSERTION) {
-         k = markedCount;
+      if (!begun) {
+         reset();
+      }
+      EventMetrics.recordNext();
+      return iteration.next();
+   }
+
+   /** Returns a sequential stream of the events in this collection, in the
+   **  order given by the specified iteration mode.
+   */
+   public Stream<Event> stream(int iterMode) {
+      return snapshot().stream(orderOf(iterMode));
+   }
+
+   /** Returns a sequential stream of the events in this collection, in the
+   **  specified order.
+   */
+   public Stream<Event> stream(EventOrder order) {
+      return snapshot().stream(order);
+   }
+
+   /** Returns a parallel stream of the events in this collection, in the
+   **  order given by the specified iteration mode.
+   */
+   public Stream<Event> parallelStream(int iterMode) {
+      return snapshot().parallelStream(orderOf(iterMode));
+   }
+
+   /** Returns a parallel stream of the events in this collection, in the
+   **  specified order.
+   */
+   public Stream<Event> parallelStream(EventOrder order) {
+      return snapshot().parallelStream(order);
+   }
+
+   /** Returns (as a list) the first k events in the order given by the
+   **  specified iteration mode, or all of the events if there are fewer
+   **  than k.
+   */
+   public List<Event> top(int iterMode, int k) {
+      return snapshot().page(orderOf(iterMode), 0, k);
+   }
+
+   /** Returns (as a list) the first k events in the specified order, or all
+   **  of the events if there are fewer than k.
+   */
+   public List<Event> top(EventOrder order, int k) {
+      return snapshot().page(order, 0, k);
+   }
+
+   /** Returns (as a list) the events at positions offset, offset+1, ...,
+   **  offset+limit-1 in the order given by the specified iteration mode,
+   **  omitting positions beyond the end of the collection.
+   */
+   public List<Event> page(int iterMode, int offset, int limit) {
+      return snapshot().page(orderOf(iterMode), offset, limit);
+   }
+
+   /** Returns (as a list) the events at positions offset, offset+1, ...,
+   **  offset+limit-1 in the specified order, omitting positions beyond the
+   **  end of the collection.
+   */
+   public List<Event> page(EventOrder order, int offset, int limit) {
+      return snapshot().page(order, offset, limit);
+   }
+
+   /** Returns a stream of the events in this collection whose dates are
+   **  neither earlier than from nor later than to, in chronological order.
+   **  Apart from building the chronological ordering (if it is not already
+   **  cached), this takes O(log n + k) time, k being the number of events
+   **  in the result.
+   */
+   public Stream<Event> between(CalendarDate from, CalendarDate to) {
+      return snapshot().between(from, to);
+   }
+
+   /** Returns a stream of the events in this collection having the given
+   **  principal, in order of insertion, in O(1 + k) time, k being the number
+   **  of events in the result.
+   */
+   public Stream<Event> byPrincipal(String principal) {
+      return snapshot().byPrincipal(principal);
+   }
+
+   /** Returns a stream of the events in this collection having the given
+   **  description, in order of insertion, in O(1 + k) time, k being the
+   **  number of events in the result.
+   */
+   public Stream<Event> byDescription(String description) {
+      return snapshot().byDescription(description);
+   }
+
+   /** Returns a stream of the events in this collection whose principals
+   **  begin with the given prefix, grouped by principal in alphabetical order
+   **  (and in order of insertion within each group).
+   */
+   public Stream<Event> byPrincipalPrefix(String prefix) {
+      return snapshot().byPrincipalPrefix(prefix);
+   }
+
+   /** Returns a stream of the events in this collection whose descriptions
+   **  begin with the given prefix, grouped by description in alphabetical
+   **  order (and in order of insertion within each group).
+   */
+   public Stream<Event> byDescriptionPrefix(String prefix) {
+      return snapshot().byDescriptionPrefix(prefix);
+   }
+
+   /** Returns a stream of the events in this collection whose principals
+   **  contain the given string, grouped by principal.
+   */
+   public Stream<Event> byPrincipalSubstring(String part) {
+      return snapshot().byPrincipalSubstring(part);
+   }
+
+   /** Returns a stream of the events in this collection whose descriptions
+   **  contain the given string, grouped by description.
+   */
+   public Stream<Event> byDescriptionSubstring(String part) {
+      return snapshot().byDescriptionSubstring(part);
+   }
+
+
+   // nested class
+   // ------------
+
+   /** An instance of this class is a point-in-time view of an event collection,
+   **  consisting of the events in it at the time the snapshot was taken.  A
+   **  snapshot supports the same reset()/hasNext()/next() iteration protocol
+   **  as the collection itself; insertions into (and removals from) the
+   **  collection made after the snapshot was taken have no effect upon it.
+   **  A snapshot shares the collection's caches, and so may be used only by
+   **  the thread that uses the collection.
+   */
+   public static class Snapshot {
+
+      private final EventCollection owner;  // the collection viewed
+      private final Event[] events;  // the collection's array at snapshot time
+      private final int[] dates;     // the collection's dates[], principals[]
+      private int[] principals;      // and descriptions[] at snapshot time
+      private int[] descriptions;
+      private final long[] sequences;  // and sequences[] at snapshot time
+      private int indexed;           // # of positions whose ids are in principals[]
+                                     // and descriptions[] (see indexNames())
+      private final int size;        // the watermark: events[0..size-1] are visible,
+      private final int[] removedAt; // except those removed at or before
+      private final int version;     // this version of the collection
+      private final int generation;  // the collection's generation at snapshot time
+      private final int count;       // # of events visible
+      private final Map<EventOrder,int[]> orderings;  // the owner's orderings
+                                                      // at snapshot time
+
+      private boolean active;     // true iff an iteration is active
+
+      private int[] ordering;     // positions of events in iteration order
+                                  // (null when iterating by insertion)
+
+      private int position;       // # of events returned during the current
+                                  // iteration
+
+      private Snapshot(EventCollection owner, int size) {
+         this.owner = owner;
+         this.events = owner.events;
+         this.dates = owner.dates;
+         this.principals = owner.principals;
+         this.descriptions = owner.descriptions;
+         this.sequences = owner.sequences;
+         this.indexed = owner.indexed;
+         this.size = size;
+         this.removedAt = owner.removedAt;
+         this.version = owner.version;
+         this.generation = owner.generation;
+         this.count = size - owner.removedCount;
+         this.orderings = new HashMap<EventOrder,int[]>(owner.orderings);
+         active = false;
+      }
+
+      /** Returns the number of events visible through this snapshot.
+      */
+      public int sizeOf() { return count; }
+
+      /** Resets iteration to begin afresh, using the default iteration mode.
+      */
+      public void reset() {
+         reset(ITERATE_BY_INSERTION);
+      }
+
+      /** Resets iteration over this snapshot to begin afresh, with the
+      **  parameter specifying the iteration mode (as for the collection's
+      **  reset() method).
+      */
+      public void reset(int iterMode) {
+         if (iterMode < 0 || iterMode > 4)
+         {
+            throw new IllegalArgumentException("Illegal iteration mode value");
+         }
+         else if (iterMode == ITERATE_INACTIVE) {
+            active = false;
+         }
+         else {
+            reset(orderOf(iterMode));
+         }
       }
-      else if (iterationMode == ITERATE_BY_DATE) {
-         k = indexOfNextByDate();
+
+      /** Resets iteration over this snapshot to begin afresh, with the events
+      **  in the specified order.
+      */
+      public void reset(EventOrder order) {
+         ordering = orderingFor(order);
+         position = 0;
+         active = true;
+         skipRemoved();
+      }
+
+      /** Returns true if and only if there is an active iteration over this
+      **  snapshot that has at least one more element to iterate over.
+      **  (position never rests upon a removed event; see skipRemoved().)
+      */
+      public boolean hasNext() {
+         return active && position != size;
+      }
+
+      /** Returns the next event in the iteration.
+      **  pre-condition: hasNext()
+      */
+      public Event next() {
+         int k = (ordering == null) ? position : ordering[position];
+         position++;
+         skipRemoved();
+         return events[k];
+      }
+
+      /** Returns a sequential stream of the events in this snapshot, in the
+      **  order given by the specified iteration mode.
+      */
+      public Stream<Event> stream(int iterMode) {
+         return stream(orderOf(iterMode));
+      }
+
+      /** Returns a sequential stream of the events in this snapshot, in the
+      **  specified order.
+      */
+      public Stream<Event> stream(EventOrder order) {
+         return StreamSupport.stream(spliterator(order), false);
+      }
+
+      /** Returns a parallel stream of the events in this snapshot, in the
+      **  order given by the specified iteration mode.
+      */
+      public Stream<Event> parallelStream(int iterMode) {
+         return parallelStream(orderOf(iterMode));
+      }
+
+      /** Returns a parallel stream of the events in this snapshot, in the
+      **  specified order.
+      */
+      public Stream<Event> parallelStream(EventOrder order) {
+         return StreamSupport.stream(spliterator(order), true);
+      }
+
+      /** Returns a spliterator over the events in this snapshot, in the
+      **  specified order.
+      */
+      public EventSpliterator spliterator(EventOrder order) {
+         return new EventSpliterator(events, orderingFor(order), 0, size, visibility());
       }
-      else if (iterationMode == ITERATE_BY_PRINCIPAL) {
-         k = indexOfNextByPrincipal();
-      } 
-      else {  // (iterationMode == ITERATE_BY_DESCRIPTION) 
-         k = indexOfNextByDescription();
+
+      /** Returns (as a list) the first k events of this snapshot in the
+      **  order given by the specified iteration mode.
+      */
+      public List<Event> top(int iterMode, int k) {
+         return page(orderOf(iterMode), 0, k);
+      }
+
+      /** Returns (as a list) the first k events of this snapshot in the
+      **  specified order.
+      */
+      public List<Event> top(EventOrder order, int k) {
+         return page(order, 0, k);
+      }
+
+      /** Returns (as a list) the events at positions offset..offset+limit-1
+      **  of this snapshot in the order given by the specified iteration mode,
+      **  omitting positions beyond the end of the snapshot.
+      */
+      public List<Event> page(int iterMode, int offset, int limit) {
+         return page(orderOf(iterMode), offset, limit);
       }
 
-      marked[k] = true;
-      markedCount++;
+      /** Returns (as a list) the events at positions offset..offset+limit-1
+      **  of this snapshot in the specified order, omitting positions beyond
+      **  the end of the snapshot.  The ordering is sliced directly if it is
+      **  cached (passing over any removed events); otherwise the first
+      **  offset+limit events are selected by means of a bounded heap.
+      */
+      public List<Event> page(EventOrder order, int offset, int limit) {
+         if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Illegal page bounds");
+         }
+         int lo = Math.min(offset, count);
+         int hi = (int) Math.min((long) offset + limit, count);
+         int[] selected;
+         int n;
+         if (order.isInsertionOrder()) {
+            selected = null;
+            n = size;
+         }
+         else if (cachedOrderingFor(order) != null) {
+            selected = cachedOrderingFor(order);
+            n = size;
+         }
+         else {
+            selected = firstInOrder(order, hi);
+            n = hi;
+         }
+         List<Event> result = new ArrayList<Event>(hi - lo);
+         int i = 0;   // # of visible events passed so far
+         for (int p = 0; p < n && i < hi; p++) {
+            int k = (selected == null) ? p : selected[p];
+            if (isVisible(k)) {
+               if (i >= lo) {
+                  result.add(events[k]);
+               }
+               i = i + 1;
+            }
+         }
+         return result;
+      }
+
+      /** Returns a stream of the events in this snapshot whose dates are
+      **  neither earlier than from nor later than to, in chronological order.
+      */
+      public Stream<Event> between(CalendarDate from, CalendarDate to) {
+         int[] byDate = orderingFor(EventOrder.BY_DATE);
+         int lo = firstLaterThan(byDate, from.toKey() - 1);
+         int hi = Math.max(lo, firstLaterThan(byDate, to.toKey()));
+         return StreamSupport.stream(new EventSpliterator(events, byDate, lo, hi, visibility()), false);
+      }
+
+      /* Returns the sequence numbers (see insert(Event, long)) of the events
+      ** in this snapshot, in the specified order, i.e., the numbers of the
+      ** events of stream(order), one for one.  (An event given no number is
+      ** taken to have its position as its number.)
+      */
+      LongStream sequences(EventOrder order) {
+         return sequencesOf(orderingFor(order), 0, size);
+      }
+
+      /* Returns the sequence numbers of the events of between(from, to), one
+      ** for one.
+      */
+      LongStream sequencesBetween(CalendarDate from, CalendarDate to) {
+         int[] byDate = orderingFor(EventOrder.BY_DATE);
+         int lo = firstLaterThan(byDate, from.toKey() - 1);
+         int hi = Math.max(lo, firstLaterThan(byDate, to.toKey()));
+         return sequencesOf(byDate, lo, hi);
+      }
+
+      /** Returns a stream of the events in this snapshot having the given
+      **  principal, in order of insertion.
+      */
+      public Stream<Event> byPrincipal(String principal) {
+         indexNames();
+         return postingStreams(owner.principalIndex, principals, new int[] {owner.principalIndex.find(principal)});
+      }
+
+      /** Returns a stream of the events in this snapshot having the given
+      **  description, in order of insertion.
+      */
+      public Stream<Event> byDescription(String description) {
+         indexNames();
+         return postingStreams(owner.descriptionIndex, descriptions, new int[] {owner.descriptionIndex.find(description)});
+      }
+
+      /** Returns a stream of the events in this snapshot whose principals
+      **  begin with the given prefix.
+      */
+      public Stream<Event> byPrincipalPrefix(String prefix) {
+         indexNames();
+         return postingStreams(owner.principalIndex, principals, owner.principalIndex.idsWithPrefix(prefix));
+      }
+
+      /** Returns a stream of the events in this snapshot whose descriptions
+      **  begin with the given prefix.
+      */
+      public Stream<Event> byDescriptionPrefix(String prefix) {
+         indexNames();
+         return postingStreams(owner.descriptionIndex, descriptions, owner.descriptionIndex.idsWithPrefix(prefix));
+      }
+
+      /** Returns a stream of the events in this snapshot whose principals
+      **  contain the given string.
+      */
+      public Stream<Event> byPrincipalSubstring(String part) {
+         indexNames();
+         return postingStreams(owner.principalIndex, principals, owner.principalIndex.idsContaining(part));
+      }
+
+      /** Returns a stream of the events in this snapshot whose descriptions
+      **  contain the given string.
+      */
+      public Stream<Event> byDescriptionSubstring(String part) {
+         indexNames();
+         return postingStreams(owner.descriptionIndex, descriptions, owner.descriptionIndex.idsContaining(part));
+      }
 
-      return events[k];
+      /* Returns the concatenation of the posting streams of the given ids in the
+      ** given index.  The index's posting lists number the events as the
+      ** collection does now; if it has been compacted since this snapshot was
+      ** taken, the given column (principals or descriptions) of the snapshot is
+      ** searched instead.  The lists (and their lengths) are taken when the
+      ** stream is made, as a later compaction replaces them with renumbered
+      ** ones; each is visited only when the stream reaches it.
+      */
+      private Stream<Event> postingStreams(StringIndex index, int[] column, int[] ids) {
+         Stream<Event> result;
+         if (generation == owner.generation) {
+            int[][] lists = new int[ids.length][];
+            int[] counts = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+               if (ids[i] != -1) {
+                  lists[i] = index.postingsOf(ids[i]);
+                  counts[i] = index.postingCountOf(ids[i]);
+               }
+            }
+            result = IntStream.range(0, ids.length).filter(i -> lists[i] != null).boxed()
+                              .flatMap(i -> postingStream(lists[i], counts[i]));
+         }
+         else {
+            result = columnStream(column, ids);
+         }
+         return result;
+      }
+
+      /* Returns a stream of the events in this snapshot whose positions are
+      ** among postings[0..n-1] (a posting list and its length, as taken from
+      ** an index).  Positions at or beyond size belong to events inserted
+      ** after the snapshot was taken; as a posting list is ascending, they
+      ** are all at its end.
+      */
+      private Stream<Event> postingStream(int[] postings, int n) {
+         while (n != 0 && postings[n-1] >= size) {
+            n = n - 1;
+         }
+         return StreamSupport.stream(new EventSpliterator(events, postings, 0, n, visibility()), false);
+      }
+
+      /* Returns a stream of the events in this snapshot whose ids in the given
+      ** column are among the given ids (any of which may be -1), grouped by id
+      ** in the order in which the ids are given, and in order of insertion
+      ** within each group.  The column is searched in O(size) time.
+      */
+      private Stream<Event> columnStream(int[] column, int[] ids) {
+         Map<Integer,Integer> placeOf = new HashMap<Integer,Integer>();
+         for (int i = 0; i < ids.length; i++) {
+            placeOf.putIfAbsent(ids[i], i);
+         }
+         int[] places = new int[size];
+         int[] found = new int[size];
+         int n = 0;
+         for (int k = 0; k < size; k++) {
+            Integer place = placeOf.get(column[k]);
+            if (place != null && isVisible(k)) {
+               places[k] = place;
+               found[n] = k;
+               n = n + 1;
+            }
+         }
+         int[] grouped = IndexSort.sortedIndices(places, found, n);
+         return StreamSupport.stream(new EventSpliterator(events, grouped, 0, n), false);
+      }
+
+      /* Makes the ids of the principals and descriptions of all of the events
+      ** in this snapshot available in principals[] and descriptions[].  If
+      ** some were pending when the snapshot was taken, the collection is made
+      ** to catch up, and the snapshot adopts its columns (or, if the
+      ** collection has been compacted since, looks the ids up itself).
+      */
+      private void indexNames() {
+         if (indexed < size) {
+            owner.catchUp();
+            if (generation == owner.generation) {
+               principals = owner.principals;
+               descriptions = owner.descriptions;
+            }
+            else {
+               principals = Arrays.copyOf(principals, size);
+               descriptions = Arrays.copyOf(descriptions, size);
+               for (int k = indexed; k < size; k++) {
+                  principals[k] = owner.principalIndex.find(events[k].principalOf());
+                  descriptions[k] = owner.descriptionIndex.find(events[k].descriptionOf());
+               }
+            }
+            indexed = size;
+         }
+      }
+
+      /* Returns the sequence numbers of the visible events at the positions
+      ** ordering[lo..hi-1] (or lo..hi-1, if ordering is null), in that order.
+      */
+      private LongStream sequencesOf(int[] ordering, int lo, int hi) {
+         return IntStream.range(lo, hi)
+                         .map(i -> (ordering == null) ? i : ordering[i])
+                         .filter(this::isVisible)
+                         .mapToLong(k -> (sequences == null) ? k : sequences[k]);
+      }
+
+      /* Returns true if and only if the event at position k (less than size)
+      ** is visible through this snapshot, i.e., it had not been removed from
+      ** the collection when the snapshot was taken.
+      */
+      private boolean isVisible(int k) {
+         return removedAt[k] == 0 || removedAt[k] > version;
+      }
+
+      /* Returns the test of visibility to be given to an EventSpliterator over
+      ** this snapshot: null if every event is visible, and otherwise isVisible.
+      */
+      private IntPredicate visibility() {
+         return (count == size) ? null : this::isVisible;
+      }
+
+      /* Advances position, if need be, past the removed events, so that it
+      ** rests upon a visible event or at the end of the iteration.
+      */
+      private void skipRemoved() {
+         while (position != size &&
+                !isVisible((ordering == null) ? position : ordering[position])) {
+            position++;
+         }
+      }
+
+      /* Returns the least p such that dates[byDate[p]] > dateKey, or size if
+      ** there is no such p.  (byDate is the chronological ordering.)
+      */
+      private int firstLaterThan(int[] byDate, int dateKey) {
+         int lo = 0;
+         int hi = size;
+         while (lo != hi) {
+            int mid = (lo + hi) >>> 1;
+            if (dates[byDate[mid]] > dateKey) {
+               hi = mid;
+            }
+            else {
+               lo = mid + 1;
+            }
+         }
+         return lo;
+      }
+
+      /* Returns the positions of the events in this snapshot in the specified
+      ** order, or null for insertion order.  (Removed events are not left
+      ** out.)  If the collection has been compacted since this snapshot was
+      ** taken, the ordering is built from the snapshot's own columns, and
+      ** kept by the snapshot.
+      */
+      private int[] orderingFor(EventOrder order) {
+         int[] result;
+         if (order.isInsertionOrder()) {
+            result = null;
+         }
+         else {
+            if (namesIn(order)) {
+               indexNames();
+            }
+            result = cachedOrderingFor(order);
+            if (result == null && generation == owner.generation) {
+               result = owner.orderingOf(order, size);
+            }
+            else if (result == null) {
+               result = sortedRun(owner.keyColumnsOf(order, dates, principals, descriptions, size), 0, size);
+               orderings.put(order, result);
+            }
+         }
+         return result;
+      }
+
+      /* Returns the ordering of this snapshot's events for the specified
+      ** order, if one has already been built (either before the snapshot was
+      ** taken or since), and null otherwise.
+      */
+      private int[] cachedOrderingFor(EventOrder order) {
+         int[] result = orderings.get(order);
+         if (result == null || result.length != size) {
+            result = owner.orderings.get(order);
+            if (result == null || result.length != size || owner.generation != generation) {
+               result = null;
+            }
+         }
+         return result;
+      }
+
+      /* Returns the positions of the first m events of this snapshot in the
+      ** specified order, m being at most sizeOf().  These
+      ** are selected by passing every visible event through a heap that holds
+      ** the m events found so far that come first in that order, with the one
+      ** that comes last among them at the root, in O(size log m) time.
+      */
+      private int[] firstInOrder(EventOrder order, int m) {
+         if (namesIn(order)) {
+            indexNames();
+         }
+         int[] heap = new int[m];
+         int count = 0;
+         for (int k = 0; k < size && m != 0; k++) {
+            if (!isVisible(k)) {
+               // removed: pass over it
+            }
+            else if (count < m) {
+               heap[count] = k;     // sift the new event up from the bottom
+               int child = count;
+               count = count + 1;
+               while (child != 0 && precedes(order, heap[(child-1)/2], heap[child])) {
+                  swap(heap, child, (child-1)/2);
+                  child = (child-1)/2;
+               }
+            }
+            else if (precedes(order, k, heap[0])) {
+               heap[0] = k;         // replace the root and sift it down
+               siftDown(order, heap, 0, m);
+            }
+         }
+         for (int end = count - 1; end > 0; end--) {   // heapsort the survivors
+            swap(heap, 0, end);
+            siftDown(order, heap, 0, end);
+         }
+         return heap;
+      }
+
+      /* Restores the heap property of heap[0..n-1] (see firstInOrder()) by
+      ** moving the element at position i down to where it belongs.
+      */
+      private void siftDown(EventOrder order, int[] heap, int i, int n) {
+         int child = 2*i + 1;
+         while (child < n) {
+            if (child + 1 < n && precedes(order, heap[child], heap[child+1])) {
+               child = child + 1;
+            }
+            if (precedes(order, heap[i], heap[child])) {
+               swap(heap, i, child);
+               i = child;
+               child = 2*i + 1;
+            }
+            else {
+               child = n;
+            }
+         }
+      }
+
+      /* Returns true if the event at position a comes before the event at
+      ** position b in the specified order (with ties broken by order of
+      ** insertion, as in the cached orderings).
+      */
+      private boolean precedes(EventOrder order, int a, int b) {
+         int c = 0;
+         for (int i = 0; c == 0 && i < order.keyCount(); i++) {
+            int field = order.fieldAt(i);
+            if (field == EventOrder.DATE) {
+               c = Integer.compare(dates[a], dates[b]);
+            }
+            else if (field == EventOrder.PRINCIPAL) {
+               c = (principals[a] == principals[b]) ? 0 :
+                   owner.principalIndex.stringOf(principals[a]).compareTo(owner.principalIndex.stringOf(principals[b]));
+            }
+            else if (field == EventOrder.DESCRIPTION) {
+               c = (descriptions[a] == descriptions[b]) ? 0 :
+                   owner.descriptionIndex.stringOf(descriptions[a]).compareTo(owner.descriptionIndex.stringOf(descriptions[b]));
+            }
+            else {  // (field == EventOrder.INSERTION)
+               c = Integer.compare(a, b);
+            }
+            if (order.isDescendingAt(i)) {
+               c = -c;
+            }
+         }
+         return c < 0 || (c == 0 && a < b);
+      }
+
+      /* Exchanges b[i] and b[j].
+      */
+      private static void swap(int[] b, int i, int j) {
+         int temp = b[i];
+         b[i] = b[j];
+         b[j] = temp;
+      }
    }
 
 
    // private methods
    // ---------------
 
+   /* Returns true if and only if an event having the same date, principal and
+   ** description as the given event is in this collection.
+   */
+   private boolean isDuplicate(Event e) {
+      int principal = principalIndex.find(e.principalOf());
+      int description = descriptionIndex.find(e.descriptionOf());
+      return principal != -1 && description != -1 &&
+             uniques[slotOf(e.dateOf().toKey(), principal, description)] != 0;
+   }
 
-   /* Returns the location, within events[], of an unmarked event having the
-   ** earliest calendar date among all unmarked events in the collection.
-   ** More formally:
-   ** Returns k satisfying 0<=k<size && !marked[k] &&
-   ** (forall m | 0<=m<size && !marked[m] : 
-   **             events[k].dateOf().compareTo(events[m].dateOf()) <= 0)
-   ** 
-   ** pre-condition: hasNext()
+   /* Returns the position of the event in this collection having the same
+   ** date, principal and description as the given event (the earliest
+   ** inserted, if there are several), or -1 if there is no such event.  The
+   ** event is found by way of uniques[], or, if duplicates are allowed, by
+   ** searching the posting list of the principal.
    */
-   private int indexOfNextByDate()
-   {
-	   int j = 0;
-	   
-	   while (marked[j])
-	   {
-		   j++;
-	   }
-	   
-	   int current = j;
-
-	   for (int i = j; i < size; i++)
-	   {
-		   if ((events[current].dateOf().isLaterThan(events[i].dateOf())) && !marked[i])
-		   {
-			   current = i;
-		   }
-	   }
-	   return current;
-   }
-
-   /* Returns the location, within events[], of an unmarked event having the
-   ** alphabetically smallest principal among all unmarked events in the 
-   ** collection.  More formally:
-   ** Returns k satisfying 0<=k<size && !marked[k] &&
-   ** (forall m | 0<=m<size && !marked[m] : 
-   **             events[k].principalOf().compareTo(events[m].principalOf()) <= 0)
-   **
-   ** pre-condition: hasNext()
+   private int positionOf(Event e) {
+      int principal = principalIndex.find(e.principalOf());
+      int description = descriptionIndex.find(e.descriptionOf());
+      int date = e.dateOf().toKey();
+      int result = -1;
+      if (principal == -1 || description == -1) {
+         // no such event
+      }
+      else if (uniques != null) {
+         result = uniques[slotOf(date, principal, description)] - 1;
+      }
+      else {
+         int[] postings = principalIndex.postingsOf(principal);
+         int n = principalIndex.postingCountOf(principal);
+         for (int i = 0; result == -1 && i < n; i++) {
+            int k = postings[i];
+            if (removedAt[k] == 0 && dates[k] == date && descriptions[k] == description) {
+               result = k;
+            }
+         }
+      }
+      return result;
+   }
+
+   /* Fills uniques[] afresh (at the size suited to the current capacity)
+   ** with the events in this collection.
    */
-   private int indexOfNextByPrincipal()
-   {
-	   int j = 0;
-	   
-	   while (marked[j])
-	   {
-		   j++;
-	   }
-	   
-	   int current = j;
-	   
-	   for (int i = j; i < size; i++)
-	   {
-		   /* if events[current] compared to events[i] < 0......current precedes the argument
-		    * else if events[current] compared to events[i] > 0.......current follows the argument
-		    * else if events[current] compared to events[i] = 0........they are equal
-		    */
-		   
-		   if (events[i].principalOf().compareTo(events[current].principalOf()) <= 0 && !marked[i])
-		   {
-			   current = i;
-		   }		   
-	   }
-	   return current;
-   }
-
-   /* Returns the location, within events[], of an unmarked event having the
-   ** alphabetically smallest description among all unmarked events in the 
-   ** collection.  More formally:
-   ** Returns k satisfying 0<=k<size && !marked[k] &&
-   ** (for all m | 0<=m<size && !marked[m] : 
-   **             events[k].descriptionOf().compareTo(events[m].descriptionOf()) <= 0)
+   private void rehash() {
+      uniques = new int[tableLengthFor(capacityOf())];
+      for (int k = 0; k < size; k++) {
+         if (removedAt[k] == 0) {
+            uniques[slotOf(dates[k], principals[k], descriptions[k])] = k + 1;
+         }
+      }
+   }
+
+   /* Removes the event at position k from uniques[].  The events following
+   ** it in its run of occupied slots are shifted back, as need be, so that
+   ** each can still be reached by probing from its home slot.
+   */
+   private void unhash(int k) {
+      int mask = uniques.length - 1;
+      int hole = slotOf(dates[k], principals[k], descriptions[k]);
+      int slot = (hole + 1) & mask;
+      while (uniques[slot] != 0) {
+         int j = uniques[slot] - 1;
+         int home = homeSlotOf(dates[j], principals[j], descriptions[j]);
+         if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+            uniques[hole] = uniques[slot];   // (home is not within hole+1..slot)
+            hole = slot;
+         }
+         slot = (slot + 1) & mask;
+      }
+      uniques[hole] = 0;
+   }
+
+   /* Returns the slot of uniques[] at which probing for the event having the
+   ** given date (as yyyymmdd) and principal and description ids begins.
+   */
+   private int homeSlotOf(int date, int principal, int description) {
+      int h = (date * 31 + principal) * 31 + description;
+      return ((h ^ (h >>> 16)) * 0x9E3779B9) & (uniques.length - 1);
+   }
+
+   /* Returns the slot of uniques[] that holds (or, if there is no such event,
+   ** would hold) the event having the given date (as yyyymmdd) and principal
+   ** and description ids.  Collisions are resolved by linear probing.
+   */
+   private int slotOf(int date, int principal, int description) {
+      int mask = uniques.length - 1;
+      int slot = homeSlotOf(date, principal, description);
+      boolean found = false;
+      while (!found && uniques[slot] != 0) {
+         int k = uniques[slot] - 1;
+         if (dates[k] == date && principals[k] == principal && descriptions[k] == description) {
+            found = true;
+         }
+         else {
+            slot = (slot + 1) & mask;
+         }
+      }
+      return slot;
+   }
+
+   /* Returns the length of a hash table suitable for the given number of
+   ** events: a power of two at least twice that number.
+   */
+   private static int tableLengthFor(int capacity) {
+      int result = 2;
+      while (result < 2 * capacity) {
+         result = 2 * result;
+      }
+      return result;
+   }
+
+   /* Adds to the given view (registered with this collection) each of the
+   ** events in this collection, in order of insertion.
+   */
+   private void refill(EventView view) {
+      for (int k = 0; k < size; k++) {
+         if (removedAt[k] == 0) {
+            view.add(events[k], k, dates[k], principals[k], descriptions[k]);
+         }
+      }
+   }
+
+   /* Returns the dictionary supplying the group labels for the specified way
+   ** of grouping, or null if the groups are not labeled by strings.
+   */
+   private StringIndex labelsOf(int grouping) {
+      StringIndex result = null;
+      if (grouping == EventAggregation.BY_PRINCIPAL) {
+         result = principalIndex;
+      }
+      else if (grouping == EventAggregation.BY_DESCRIPTION) {
+         result = descriptionIndex;
+      }
+      return result;
+   }
+
+   /* Returns the order corresponding to the specified iteration mode (any
+   ** but ITERATE_INACTIVE).  (Package-private for the benefit of the other
+   ** kinds of collection built from EventCollections.)
+   */
+   static EventOrder orderOf(int iterMode) {
+      EventOrder result;
+      if (iterMode == ITERATE_BY_INSERTION) {
+         result = EventOrder.BY_INSERTION;
+      }
+      else if (iterMode == ITERATE_BY_DATE) {
+         result = EventOrder.BY_DATE;
+      }
+      else if (iterMode == ITERATE_BY_PRINCIPAL) {
+         result = EventOrder.BY_PRINCIPAL;
+      }
+      else if (iterMode == ITERATE_BY_DESCRIPTION) {
+         result = EventOrder.BY_DESCRIPTION;
+      }
+      else {
+         throw new IllegalArgumentException("Illegal iteration mode value");
+      }
+      return result;
+   }
+
+   /* Returns the positions 0..n-1 of events[] arranged in the specified order,
+   ** where n is at most size.  Events that agree on every key of the order
+   ** appear in order of insertion.  The ordering for the largest n asked for
+   ** so far is cached; the caller must not modify the result.
    **
-   ** pre-condition: hasNext()
+   ** The order is compiled into one column of int keys per sort key (with a
+   ** descending key's values flipped), and the positions are sorted by each
+   ** column in turn, from the last key to the first.  As each sort is stable,
+   ** the result is ordered by the first key, then the second, and so on.
+   ** If a cached ordering covers positions 0..m-1, only positions m..n-1 are
+   ** sorted in this way, and the result is merged with the cached ordering.
    */
-   private int indexOfNextByDescription()
-   {
-	   int j = 0;
-	   
-	   while (marked[j])
-	   {
-		   j++;
-	   }
-	   
-	   int current = j;
-	   
-	   for (int i = j; i < size; i++)
-	   {
-		   /* if events[current] compared to events[i] < 0......current precedes the argument
-		    * else if events[current] compared to events[i] > 0.......current follows the argument
-		    * else if events[current] compared to events[i] = 0........they are equal
-		    */
-		   if (events[i].descriptionOf().compareTo(events[current].descriptionOf()) <= 0 && !marked[i])
-		   {
-			   current = i;
-		   }
-	   }
-	   return current;
-   }
-
-   /* Returns the lowest-numbered location in b[] containing an element equal
-   ** to val, or, if val does not occur in b[], returns b.length. 
-   ** More formally:
-   ** Returns the smallest k such that 0 <= k <= b.length and either
-   ** k == b.length or b[k] == val.
-   */
-   private int indexOf(boolean[] b, boolean val)
-   {
-      int i = 0;
-      while (i != b.length  &&  b[i] != val) { 
-         i++;
+   private int[] orderingOf(EventOrder order, int n) {
+      int[] cached = orderings.get(order);
+      int[] result;
+      if (cached != null && cached.length == n) {
+         result = cached;
+      }
+      else if (cached != null && cached.length > n) {
+         result = prefixOf(cached, n);
+      }
+      else {
+         EventRecordings.OrderingBuild recording = new EventRecordings.OrderingBuild();
+         recording.begin();
+         if (namesIn(order)) {
+            catchUp();
+         }
+         int[][] keys = keyColumnsOf(order, dates, principals, descriptions, n);
+         int from = (cached == null) ? 0 : cached.length;
+         int[] run = sortedRun(keys, from, n);
+         EventMetrics.recordSort(n - from);
+         result = (cached == null) ? run : IndexSort.merge(cached, run, keys);
+         orderings.put(order, result);
+         if (recording.shouldCommit()) {
+            recording.order = order.toString();
+            recording.sorted = n - from;
+            recording.events = n;
+            recording.commit();
+         }
+      }
+      return result;
+   }
+
+   /* Returns the positions from..n-1 sorted by the given columns of keys (as
+   ** for orderingOf()).
+   */
+   private static int[] sortedRun(int[][] keys, int from, int n) {
+      int[] run = (from == 0) ? null : IndexSort.range(from, n);
+      for (int i = keys.length - 1; i >= 0; i--) {
+         run = IndexSort.sortedIndices(keys[i], run, n - from);
+      }
+      return run;
+   }
+
+   /* Gives the event at position k the specified sequence number (unless it
+   ** is NO_SEQUENCE).
+   */
+   private void number(int k, long sequence) {
+      if (sequence != NO_SEQUENCE) {
+         if (sequences == null) {
+            sequences = new long[capacityOf()];
+         }
+         sequences[k] = sequence;
+      }
+   }
+
+   /* Assigns the ids of the principals and descriptions of the events whose
+   ** indexing was left pending when they were inserted (see insert()), in
+   ** order of insertion, so that the posting lists remain ascending.
+   */
+   private void catchUp() {
+      while (indexed < size) {
+         principals[indexed] = principalIndex.add(events[indexed].principalOf(), indexed);
+         descriptions[indexed] = descriptionIndex.add(events[indexed].descriptionOf(), indexed);
+         indexed = indexed + 1;
+      }
+   }
+
+   /* Returns true if and only if the specified order has a principal or a
+   ** description among its keys (and so needs the ids of the strings).
+   */
+   private static boolean namesIn(EventOrder order) {
+      boolean result = false;
+      for (int i = 0; !result && i < order.keyCount(); i++) {
+         int field = order.fieldAt(i);
+         result = (field == EventOrder.PRINCIPAL || field == EventOrder.DESCRIPTION);
+      }
+      return result;
+   }
+
+   /* Returns the columns of (nonnegative) int keys for the events at
+   ** positions 0..n-1 of the given columns (this collection's own, or those
+   ** of a snapshot) into which the specified order compiles: one column per
+   ** sort key, in order, with the values of a descending key's column flipped.
+   */
+   private int[][] keyColumnsOf(EventOrder order, int[] dates, int[] principals,
+                                int[] descriptions, int n) {
+      int[][] result = new int[order.keyCount()][];
+      for (int i = 0; i < result.length; i++) {
+         result[i] = keysOf(order.fieldAt(i), dates, principals, descriptions, n);
+         if (order.isDescendingAt(i)) {
+            result[i] = IndexSort.reversedKeys(result[i], n);
+         }
       }
-      return i;
+      return result;
    }
 
-   /* Places the specified value into each element of b[lowIndex..highIndex-1].
+   /* Returns a column of (nonnegative) sort keys for the events at positions
+   ** 0..n-1 of the given columns by the specified field (one of the field
+   ** constants of EventOrder).
    */
-   private void fill(boolean[] b, int lowIndex, int highIndex, boolean value) {
-      for (int i = lowIndex; i < highIndex; i++) 
-         { b[i] = value; }
+   private int[] keysOf(int field, int[] dates, int[] principals, int[] descriptions, int n) {
+      int[] result;
+      if (field == EventOrder.DATE) {
+         result = dates;
+      }
+      else if (field == EventOrder.PRINCIPAL) {
+         result = IndexSort.rankedKeys(principals, principalIndex.ranks(), n);
+      }
+      else if (field == EventOrder.DESCRIPTION) {
+         result = IndexSort.rankedKeys(descriptions, descriptionIndex.ranks(), n);
+      }
+      else {  // (field == EventOrder.INSERTION)
+         result = IndexSort.identity(n);
+      }
+      return result;
+   }
+
+   /* Returns the elements of the given ordering that are less than n, in the
+   ** same order.
+   */
+   private static int[] prefixOf(int[] ordering, int n) {
+      int[] result = new int[n];
+      int j = 0;
+      for (int i = 0; j < n; i++) {
+         if (ordering[i] < n) {
+            result[j] = ordering[i];
+            j++;
+         }
+      }
+      return result;
+   }
+
+   /* Returns the elements k of the given ordering for which newPositions[k]
+   ** is not -1, each replaced by newPositions[k], in the same order.
+   */
+   private static int[] renumbered(int[] ordering, int[] newPositions) {
+      int[] result = new int[ordering.length];
+      int n = 0;
+      for (int i = 0; i < ordering.length; i++) {
+         int p = newPositions[ordering[i]];
+         if (p != -1) {
+            result[n] = p;
+            n = n + 1;
+         }
+      }
+      return Arrays.copyOf(result, n);
    }
 
 }
@@ -1,6 +1,5 @@
 /* Java application that is for testing the EventCollection class.
 */
-import java.util.Scanner;
 import java.io.*;
 import javax.swing.*;
 import java.awt.*;
@@ -20,14 +19,16 @@ public class EventCollectionGUI {
    static final String LIST_EVENTS_PRINCIPAL   = "List Events by principal";
    static final String LIST_EVENTS_DESCRIPTION = "List Events by description";
    static final String SAVE_EVENTS  = "Save Events";
+   static final String FOLLOW_EVENTS = "Follow Events";
    static final String QUIT         = "QUIT";
 
    static final String[] COMMANDS = {LOAD_EVENTS,INSERT_EVENT,
                                      LIST_EVENTS_INSERTION,LIST_EVENTS_DATE,
                                      LIST_EVENTS_PRINCIPAL,LIST_EVENTS_DESCRIPTION,
-                                     SAVE_EVENTS,QUIT};
+                                     SAVE_EVENTS,FOLLOW_EVENTS,QUIT};
 
    static EventCollection ec = new EventCollection(256);
+   static CalendarDateCache dateCache = new CalendarDateCache(4096);   // shared by loads
 
 //===========================================================================================                      
 // Local classes, each implementing the ActionListener interface
@@ -38,13 +39,23 @@ public class EventCollectionGUI {
       public void actionPerformed(ActionEvent ae) {
          try{
             String fileName = db.nextLine("Enter filename:");
-            Scanner input = new Scanner(new File(fileName));
-            while (input.hasNextLine()) {
-               String eventDescriptor = input.nextLine();
-               Event e = new Event(eventDescriptor);
-               ec.insert(e);
+            CalendarDateParser parser = new CalendarDateParser(CalendarDateParser.STRICT);
+            parser.setAdaptive(true);
+            parser.setCache(dateCache);
+            EventLoader loader = new EventLoader(parser);
+            loader.setQuarantineFile(new File(fileName + ".rejected"));
+            try {
+               loader.load(new File(fileName), ec);
             }
-            System.out.println("Events loaded from " + fileName + "\n");
+            finally {
+               loader.closeQuarantine();
+            }
+            System.out.println("Events loaded from " + fileName);
+            if (loader.linesQuarantinedOf() != 0) {
+               System.out.println("==> " + loader.linesQuarantinedOf() + " bad line(s) quarantined in " +
+                                  fileName + ".rejected");
+            }
+            System.out.println();
          } 
          catch (IOException e){
             System.out.println("==> CAUGHT IOException; no such file");
@@ -123,6 +134,67 @@ public class EventCollectionGUI {
       }
    }
    static SAVE_EVENTS_Listener SAVE_EVENTS_Handler = new SAVE_EVENTS_Listener();   
+//------------------------------------------------------------------------------------------- 
+   // Starts following a file (inserting the events appended to it, once a
+   // second), or, if one is being followed, stops.  Following also stops if
+   // the file cannot be read.
+   public static class FOLLOW_EVENTS_Listener implements ActionListener {
+      EventFileFollower follower = null;
+      javax.swing.Timer timer = null;
+      int failuresReported = 0;
+
+      public void actionPerformed(ActionEvent ae) {
+         if (follower != null) {
+            stop();
+         }
+         else {
+            String fileName = db.nextLine("Enter filename:");
+            CalendarDateParser parser = new CalendarDateParser(CalendarDateParser.STRICT);
+            parser.setAdaptive(true);
+            parser.setCache(dateCache);
+            follower = new EventFileFollower(new File(fileName), ec, new EventLoader(parser));
+            failuresReported = 0;
+            timer = new javax.swing.Timer(1000, e -> poll());
+            poll();
+            if (follower != null) {
+               timer.start();
+               System.out.println("Following " + fileName + " (press " + FOLLOW_EVENTS + " again to stop)\n");
+            }
+         }
+      }
+
+      void poll() {
+         try {
+            int n = follower.poll();
+            if (n != 0) {
+               System.out.println(n + " events inserted from followed file");
+            }
+            if (follower.insertFailuresOf() != failuresReported) {
+               int refused = follower.insertFailuresOf() - failuresReported;
+               failuresReported = follower.insertFailuresOf();
+               System.out.println("==> CAUGHT " + follower.lastFailureOf() + " while following; " +
+                                  refused + " event(s) skipped");
+            }
+         }
+         catch (IOException e) {
+            System.out.println("==> CAUGHT IOException while following: " + e.getMessage());
+            stop();
+         }
+      }
+
+      void stop() {
+         timer.stop();
+         try {
+            follower.close();
+         }
+         catch (IOException e) {
+            System.out.println("==> CAUGHT IOException while closing followed file: " + e.getMessage());
+         }
+         System.out.println("Stopped following; " + follower.eventsInsertedOf() + " events inserted\n");
+         follower = null;
+      }
+   }
+   static FOLLOW_EVENTS_Listener FOLLOW_EVENTS_Handler = new FOLLOW_EVENTS_Listener();   
 //------------------------------------------------------------------------------------------- 
    public static class QUIT_Listener implements ActionListener {
       public void actionPerformed(ActionEvent ae) {
@@ -142,6 +214,7 @@ public class EventCollectionGUI {
                                           LIST_EVENTS_PRINCIPAL_Handler,
                                           LIST_EVENTS_DESCRIPTION_Handler,
                                           SAVE_EVENTS_Handler,
+                                          FOLLOW_EVENTS_Handler,
                                           QUIT_Handler);
 //===========================================================================================                      
 
@@ -174,13 +247,25 @@ public class EventCollectionGUI {
    ** the result of its toString() method.
    */
    private static void iterateToFile(EventCollection eventColl, String filename) throws IOException {
+      long start = EventMetrics.start();
+      EventRecordings.Save recording = new EventRecordings.Save();
+      recording.begin();
+      int count = 0;
       FileWriter fw = new FileWriter(filename);
       eventColl.reset();
       while (eventColl.hasNext()) {
          Event e = eventColl.next();
          fw.write(e.toString()+"\n");
+         count = count + 1;
       }
       fw.close();
+      EventMetrics.recordSave(start, count);
+      if (recording.shouldCommit()) {
+         recording.file = filename;
+         recording.events = count;
+         recording.bytes = new File(filename).length();
+         recording.commit();
+      }
    }
 
 
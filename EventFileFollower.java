@@ -0,0 +1,315 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/** An instance of this class follows a file of events (one per line, in the
+**  form read by the Event(String) constructor) to which lines are being
+**  appended, as "tail -F" does, inserting the events described by new lines
+**  into an event collection.  Each call of poll() reads the file from where
+**  the previous one left off to its current end, so the cost of following
+**  is in proportion to what has been appended rather than to the size of
+**  the file.  Only complete lines (those ended by a newline) are taken; an
+**  incomplete last line is left to be read once it has been completed.
+**
+**  The file is read through a FileChannel at an explicit offset, into a
+**  buffer reused from one read to the next.  Lines that do not describe
+**  events are quarantined by the follower's EventLoader.  The events are
+**  inserted in batches (by EventCollection.insertAll()), the collection's
+**  capacity being raised as needed.  The offset is advanced past a batch
+**  whether or not its insertion succeeds, so no line is ever taken twice: if
+**  the collection refuses a batch (e.g., by rejecting a duplicate), the
+**  events of the batch that were not inserted are inserted one at a time,
+**  and each event refused is counted, the last failure being kept (see
+**  insertFailuresOf() and lastFailureOf()); only the events refused are
+**  dropped.
+**
+**  If the file is rotated (i.e., the name comes to denote another file, as
+**  when a log is renamed and a new one begun), the rest of the old file is
+**  read, and the new file is then followed from its beginning.  If the file
+**  is truncated (i.e., becomes shorter than the offset reached), it is
+**  followed from its beginning again.  While there is no file of the given
+**  name, poll() does nothing.
+**
+**  A follower (like the collection it inserts into) is not safe for use by
+**  several threads at once; poll() should be called by the thread that
+**  otherwise uses the collection (e.g., from a javax.swing.Timer).
+*/
+public class EventFileFollower implements Closeable {
+
+   // class constants
+   // ---------------
+   private static final int BUFFER_SIZE = 1 << 16;
+   private static final int BATCH_SIZE = 1024;
+
+
+   // instance variables
+   // ------------------
+   private final Path path;             // the name of the file followed
+   private final EventCollection ec;    // where the events are inserted
+   private final EventLoader loader;    // reads (or quarantines) the lines
+   private final ByteBuffer buffer;     // into which the file is read
+   private final ByteArrayOutputStream partial;  // the line being read so far
+
+   private FileChannel channel;   // the file being followed (null if none is open)
+   private Object fileKey;        // the identity of that file
+   private long offset;           // the position just past the last line taken
+
+   private long eventsInserted;
+   private int insertFailures;
+   private RuntimeException lastFailure;   // (null if there has been none)
+   private int rotations;
+   private int truncations;
+
+
+   // constructors
+   // ------------
+
+   /** Initializes this follower to follow the given file, from its
+   **  beginning, into the given collection, quarantining lines with bad
+   **  dates (with a strict CalendarDateParser).
+   */
+   public EventFileFollower(File file, EventCollection ec) {
+      this(file, ec, new EventLoader(new CalendarDateParser(CalendarDateParser.STRICT)));
+   }
+
+   /** Initializes this follower to follow the given file, from its
+   **  beginning, into the given collection, reading the lines by means of
+   **  the given loader.
+   */
+   public EventFileFollower(File file, EventCollection ec, EventLoader loader) {
+      this.path = file.toPath();
+      this.ec = ec;
+      this.loader = loader;
+      buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      partial = new ByteArrayOutputStream();
+      channel = null;
+      fileKey = null;
+      offset = 0;
+      eventsInserted = 0;
+      insertFailures = 0;
+      lastFailure = null;
+      rotations = 0;
+      truncations = 0;
+   }
+
+   // observers
+   // ---------
+
+   /** Returns the loader by which this follower reads lines (and which
+   **  accounts for those quarantined).
+   */
+   public EventLoader loaderOf() { return loader; }
+
+   /** Returns the offset in the file just past the last line taken.
+   */
+   public long offsetOf() { return offset; }
+
+   /** Returns the number of events inserted (not counting those ignored as
+   **  duplicates).
+   */
+   public long eventsInsertedOf() { return eventsInserted; }
+
+   /** Returns the number of events whose insertion failed.
+   */
+   public int insertFailuresOf() { return insertFailures; }
+
+   /** Returns the exception by which the last failed insertion failed (null
+   **  if none has).
+   */
+   public RuntimeException lastFailureOf() { return lastFailure; }
+
+   /** Returns the number of times the file has been found to be rotated.
+   */
+   public int rotationsOf() { return rotations; }
+
+   /** Returns the number of times the file has been found to be truncated.
+   */
+   public int truncationsOf() { return truncations; }
+
+   // mutators
+   // --------
+
+   /** Skips the lines now in the file, so that only lines appended from now
+   **  on are taken.
+   */
+   public void skipToEnd() throws IOException {
+      if (open()) {
+         offset = channel.size();
+      }
+   }
+
+   /** Inserts the events described by the complete lines appended to the
+   **  file since the last poll (or, on the first, by those in the file),
+   **  first dealing with any rotation or truncation, and returns the number
+   **  of them.
+   */
+   public int poll() throws IOException {
+      int result = 0;
+      Object key = keyOf(path);
+      if (channel != null && !fileKey.equals(key)) {
+         result = result + drain();
+         closeChannel();
+         rotations = rotations + 1;
+      }
+      if (open()) {
+         if (channel.size() < offset) {
+            offset = 0;
+            truncations = truncations + 1;
+         }
+         result = result + drain();
+      }
+      return result;
+   }
+
+   /** Closes the file being followed.  (A later poll() reopens it, from the
+   **  offset reached.)
+   */
+   public void close() throws IOException {
+      closeChannel();
+   }
+
+   // private methods
+   // ---------------
+
+   /* Opens the file, if it is not already open, and returns true, or, if
+   ** there is no such file, returns false.  A file newly opened (other than
+   ** the one last followed) is followed from its beginning.
+   */
+   private boolean open() throws IOException {
+      if (channel == null) {
+         Object key = keyOf(path);
+         if (key != null) {
+            try {
+               channel = FileChannel.open(path, StandardOpenOption.READ);
+               if (!key.equals(fileKey)) {
+                  offset = 0;
+               }
+               fileKey = key;
+            }
+            catch (NoSuchFileException e) {
+               channel = null;   // (it vanished in the meantime)
+            }
+         }
+      }
+      return channel != null;
+   }
+
+   /* Closes the channel, if it is open.
+   */
+   private void closeChannel() throws IOException {
+      if (channel != null) {
+         channel.close();
+         channel = null;
+      }
+   }
+
+   /* Reads the open file from the offset to its end, inserting the events
+   ** described by the complete lines, and returns the number inserted.  The
+   ** offset is advanced past each batch once its insertion has been tried.
+   */
+   private int drain() throws IOException {
+      int result = 0;
+      List<Event> batch = new ArrayList<Event>(BATCH_SIZE);
+      long position = offset;
+      long taken = offset;    // the position just past the last line read
+      long end = channel.size();
+      partial.reset();
+      while (position < end) {
+         buffer.clear();
+         int n = channel.read(buffer, position);
+         if (n <= 0) {
+            end = position;    // (it has shrunk since its size was taken)
+         }
+         byte[] bytes = buffer.array();
+         int lineStart = 0;
+         for (int i = 0; i < n; i++) {
+            if (bytes[i] == '\n') {
+               partial.write(bytes, lineStart, i - lineStart);
+               Event e = loader.eventOf(lineOf(partial));
+               partial.reset();
+               lineStart = i + 1;
+               if (e != null) {
+                  batch.add(e);
+               }
+               taken = position + lineStart;
+               if (batch.size() == BATCH_SIZE) {
+                  result = result + insert(batch);
+                  offset = taken;
+               }
+            }
+         }
+         partial.write(bytes, lineStart, Math.max(n, 0) - lineStart);
+         position = position + Math.max(n, 0);
+      }
+      result = result + insert(batch);
+      offset = taken;
+      return result;
+   }
+
+   /* Returns the line held by the given bytes (less any carriage return at
+   ** the end).
+   */
+   private static String lineOf(ByteArrayOutputStream bytes) {
+      String result = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+      return result.endsWith("\r") ? result.substring(0, result.length() - 1) : result;
+   }
+
+   /* Inserts the events in the given batch into the collection (raising its
+   ** capacity if need be), empties the batch and returns the number of
+   ** events inserted.  If the collection refuses the batch part of the way
+   ** through (the events before the one refused having been inserted), the
+   ** rest of it are inserted one at a time, and those refused are counted.
+   */
+   private int insert(List<Event> batch) {
+      int before = ec.sizeOf();
+      if (!batch.isEmpty()) {
+         try {
+            ec.ensureCapacity(ec.sizeOf() + batch.size());
+            ec.insertAll(batch);
+         }
+         catch (IllegalArgumentException | IllegalStateException e) {
+            for (Event rest : batch.subList(ec.sizeOf() - before, batch.size())) {
+               try {
+                  ec.insert(rest);
+               }
+               catch (IllegalArgumentException | IllegalStateException f) {
+                  insertFailures = insertFailures + 1;
+                  lastFailure = f;
+               }
+            }
+         }
+         batch.clear();
+      }
+      int result = ec.sizeOf() - before;
+      eventsInserted = eventsInserted + result;
+      return result;
+   }
+
+   /* Returns an object identifying the file that the given name now denotes
+   ** (its file key or, where there is none, its time of creation), or null
+   ** if there is no such file.
+   */
+   private static Object keyOf(Path path) throws IOException {
+      Object result;
+      try {
+         BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+         result = (attributes.fileKey() != null) ? attributes.fileKey() : attributes.creationTime();
+      }
+      catch (NoSuchFileException e) {
+         result = null;
+      }
+      return result;
+   }
+
+}
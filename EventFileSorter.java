@@ -0,0 +1,359 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterators;
+
+/** An instance of this class sorts files of events (one per line, in the
+**  form read by the Event(String) constructor) that may be too large to be
+**  held in memory, by an external merge sort:
+**
+**  --the input is read in runs, each as long as fits within the memory
+**    budget (judged from the lengths of its lines), and each run is sorted
+**    by inserting it into an EventCollection and iterating over it in the
+**    required order, so the order is exactly that of the collection (ties
+**    being broken by order of input, or by its reverse where the order
+**    says so);
+**  --each sorted run is written to a temporary file;
+**  --the runs are merged k at a time (see EventMergeSpliterator), k being
+**    as many as the budget allows buffers for, in as many passes as needed.
+**    As the runs (and the groups of them merged in a pass) hold consecutive
+**    stretches of the input, ties between runs are broken by the runs'
+**    places in the input, later first if the order's insertion key is
+**    descending (see EventOrder.isLatestInsertedFirst()).  (If the input
+**    makes up a single run, it is written straight to the output.)
+**
+**  All reading and writing is done through large buffers.  Lines that do
+**  not describe events are quarantined by the sorter's EventLoader, and left
+**  out of the output.  The events are written by toString(), so their dates
+**  are in canonical form whatever form they were in the input.
+**
+**  Run as a program, it sorts a file:
+**
+**     java EventFileSorter <order> <input file> <output file> [<budget in MiB>]
+**
+**  the order being one of insertion, date, principal or description.
+*/
+public class EventFileSorter {
+
+   // class constants
+   // ---------------
+   private static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+   private static final int BUFFER_SIZE = 1 << 20;     // bytes per file buffer
+   private static final int BUFFER_CHARS = BUFFER_SIZE / 2;   // (two bytes per char)
+
+   // the bytes estimated to be taken by an event in a run (its objects and
+   // its share of the collection's columns), apart from its strings' characters
+   private static final int EVENT_OVERHEAD = 200;
+
+
+   // instance variables
+   // ------------------
+   private final EventOrder order;      // the order of the output
+   private final EventLoader loader;    // reads (or quarantines) the lines
+   private long memoryBudget;           // bytes that a run (or merge) may take
+   private File tempDirectory;          // where runs are spilled (or null)
+   private boolean exhausted;           // whether the input has been read to its end
+   private int runs;                    // # of runs in the last sort
+   private int passes;                  // # of merge passes in the last sort
+   private long events;                 // # of events in the last sort
+
+
+   // constructors
+   // ------------
+
+   /** Initializes this sorter to sort events into the specified order,
+   **  quarantining lines with bad dates (with a strict CalendarDateParser),
+   **  with the default memory budget.
+   */
+   public EventFileSorter(EventOrder order) {
+      this(order, new EventLoader(new CalendarDateParser(CalendarDateParser.STRICT)));
+   }
+
+   /** Initializes this sorter to sort events into the specified order,
+   **  reading the lines by means of the given loader, with the default
+   **  memory budget.
+   */
+   public EventFileSorter(EventOrder order, EventLoader loader) {
+      this.order = order;
+      this.loader = loader;
+      memoryBudget = DEFAULT_MEMORY_BUDGET;
+      tempDirectory = null;
+      exhausted = false;
+      runs = 0;
+      passes = 0;
+      events = 0;
+   }
+
+   // observers
+   // ---------
+
+   /** Returns the order into which this sorter sorts events.
+   */
+   public EventOrder orderOf() { return order; }
+
+   /** Returns the loader by which this sorter reads lines (and which
+   **  accounts for those quarantined).
+   */
+   public EventLoader loaderOf() { return loader; }
+
+   /** Returns the memory budget of this sorter, in bytes.
+   */
+   public long memoryBudgetOf() { return memoryBudget; }
+
+   /** Returns the number of runs into which the input of the last sort was
+   **  divided.
+   */
+   public int runsOf() { return runs; }
+
+   /** Returns the number of merge passes made by the last sort.
+   */
+   public int passesOf() { return passes; }
+
+   /** Returns the number of events written by the last sort.
+   */
+   public long eventsOf() { return events; }
+
+   // mutators
+   // --------
+
+   /** Sets the memory budget of this sorter: the most bytes that a run is
+   **  estimated to take together with the buffers of the input and of its
+   **  run file, and that the buffers of a merge (its inputs and its output)
+   **  may take.  It must allow for at least three buffers.
+   */
+   public void setMemoryBudget(long bytes) {
+      if (bytes < 3 * BUFFER_SIZE) {
+         throw new IllegalArgumentException("Memory budget too small");
+      }
+      memoryBudget = bytes;
+   }
+
+   /** Sets the directory in which runs are written (null for the system's
+   **  default temporary directory).
+   */
+   public void setTempDirectory(File directory) { tempDirectory = directory; }
+
+   // sorting
+   // -------
+
+   /** Writes the events described by the lines of the input file to the
+   **  output file, one per line, in this sorter's order.
+   */
+   public void sort(File input, File output) throws IOException {
+      runs = 0;
+      passes = 0;
+      events = 0;
+      List<File> spilled = new ArrayList<File>();
+      try {
+         BufferedReader in = new BufferedReader(new FileReader(input), BUFFER_CHARS);
+         try {
+            exhausted = false;
+            List<Event> run = nextRun(in);
+            runs = 1;
+            if (exhausted) {
+               events = write(sorted(run), output);
+            }
+            else {
+               spilled.add(spill(sorted(run)));
+               while (!exhausted) {
+                  run = nextRun(in);
+                  if (!run.isEmpty()) {
+                     runs = runs + 1;
+                     spilled.add(spill(sorted(run)));
+                  }
+               }
+            }
+         }
+         finally {
+            in.close();
+         }
+         if (!spilled.isEmpty()) {
+            // (a buffer for each run merged, and one for the output)
+            int fanIn = (int) Math.max(2, (memoryBudget - BUFFER_SIZE) / BUFFER_SIZE);
+            while (spilled.size() > fanIn) {
+               List<File> merged = new ArrayList<File>();
+               for (int i = 0; i < spilled.size(); i = i + fanIn) {
+                  List<File> group = spilled.subList(i, Math.min(i + fanIn, spilled.size()));
+                  File run = newRunFile();
+                  merged.add(run);
+                  merge(group, run);
+                  delete(group);
+               }
+               spilled = merged;
+               passes = passes + 1;
+            }
+            events = merge(spilled, output);
+            passes = passes + 1;
+         }
+      }
+      finally {
+         delete(spilled);
+      }
+   }
+
+   /** Sorts the file named by the second argument into the file named by the
+   **  third, in the order named by the first, within the memory budget given
+   **  (in MiB) by the fourth (or the default).
+   */
+   public static void main(String[] args) throws IOException {
+      String[] orderNames = {"insertion", "date", "principal", "description"};
+      int mode = (args.length < 3) ? -1 : Arrays.asList(orderNames).indexOf(args[0]);
+      if (mode == -1) {
+         System.out.println("usage: java EventFileSorter insertion|date|principal|description " +
+                            "<input file> <output file> [<budget in MiB>]");
+      }
+      else {
+         EventFileSorter sorter = new EventFileSorter(EventCollection.orderOf(mode + EventCollection.ITERATE_BY_INSERTION));
+         if (args.length > 3) {
+            sorter.setMemoryBudget(Long.parseLong(args[3]) << 20);
+         }
+         sorter.sort(new File(args[1]), new File(args[2]));
+         System.out.println(sorter.eventsOf() + " events sorted in " + sorter.runsOf() + " run(s), " +
+                            sorter.passesOf() + " merge pass(es); " +
+                            sorter.loaderOf().linesQuarantinedOf() + " line(s) quarantined");
+      }
+   }
+
+   // private methods
+   // ---------------
+
+   /* Returns the events described by the next lines of the given input, as
+   ** many as are estimated to fit within the memory budget (less the buffers
+   ** of the input and of the run file), noting whether the input has been
+   ** read to its end.
+   */
+   private List<Event> nextRun(BufferedReader in) throws IOException {
+      List<Event> result = new ArrayList<Event>();
+      long used = 2L * BUFFER_SIZE;
+      while (!exhausted && used < memoryBudget) {
+         String line = in.readLine();
+         if (line == null) {
+            exhausted = true;
+         }
+         else {
+            Event e = loader.eventOf(line);
+            if (e != null) {
+               result.add(e);
+               used = used + EVENT_OVERHEAD + 2L * line.length();
+            }
+         }
+      }
+      return result;
+   }
+
+   /* Returns the given events in this sorter's order, as iterated over by an
+   ** EventCollection holding them.
+   */
+   private Iterator<Event> sorted(List<Event> run) {
+      EventCollection ec = new EventCollection(Math.max(1, run.size()));
+      ec.insertAll(run);
+      return ec.snapshot().stream(order).iterator();
+   }
+
+   /* Writes the given events to a new run file, and returns the file.
+   */
+   private File spill(Iterator<Event> es) throws IOException {
+      File result = newRunFile();
+      write(es, result);
+      return result;
+   }
+
+   /* Writes the given events to the given file, one per line, and returns the
+   ** number written.
+   */
+   private static long write(Iterator<Event> es, File file) throws IOException {
+      long result = 0;
+      BufferedWriter out = new BufferedWriter(new FileWriter(file), BUFFER_CHARS);
+      try {
+         while (es.hasNext()) {
+            out.write(es.next().toString());
+            out.newLine();
+            result = result + 1;
+         }
+      }
+      catch (UncheckedIOException e) {   // (from reading a run)
+         throw e.getCause();
+      }
+      finally {
+         out.close();
+      }
+      return result;
+   }
+
+   /* Merges the given run files (each in this sorter's order, and in order of
+   ** input) into the given file, returning the number of events written.
+   */
+   private long merge(List<File> group, File output) throws IOException {
+      List<BufferedReader> readers = new ArrayList<BufferedReader>();
+      try {
+         List<Iterator<Event>> sources = new ArrayList<Iterator<Event>>();
+         for (File run : group) {
+            BufferedReader in = new BufferedReader(new FileReader(run), BUFFER_CHARS);
+            readers.add(in);
+            sources.add(new RunIterator(in));
+         }
+         return write(Spliterators.iterator(new EventMergeSpliterator(
+            sources, null, order.comparator(), order.isLatestInsertedFirst(), Long.MAX_VALUE)), output);
+      }
+      finally {
+         for (BufferedReader in : readers) {
+            in.close();
+         }
+      }
+   }
+
+   /* Returns a new (empty) file in which to write a run.
+   */
+   private File newRunFile() throws IOException {
+      File result = File.createTempFile("events-run", ".txt", tempDirectory);
+      result.deleteOnExit();
+      return result;
+   }
+
+   /* Deletes the given files.
+   */
+   private static void delete(List<File> files) {
+      for (File f : files) {
+         f.delete();
+      }
+   }
+
+   /* An iterator over the events of a run file, which (having been written by
+   ** this class) holds only lines describing events.
+   */
+   private static class RunIterator implements Iterator<Event> {
+      private final BufferedReader in;
+      private String line;    // the next line (null at the end of the file)
+
+      RunIterator(BufferedReader in) throws IOException {
+         this.in = in;
+         line = in.readLine();
+      }
+
+      public boolean hasNext() { return line != null; }
+
+      public Event next() {
+         if (line == null) {
+            throw new NoSuchElementException();
+         }
+         Event result = new Event(line);
+         try {
+            line = in.readLine();
+         }
+         catch (IOException e) {
+            throw new UncheckedIOException(e);
+         }
+         return result;
+      }
+   }
+
+}
@@ -0,0 +1,330 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/** An instance of this class generates synthetic events, for testing and
+**  benchmarking at scale.  The events are determined entirely by the seed
+**  given at creation (and the options set), so two generators created alike
+**  produce the same events.  Events are obtained one at a time (nextEvent()
+**  or nextLine()), or are written to a file in the form read by the
+**  Event(String) constructor (write()).  The following can be set:
+**
+**  --the spread of the dates: the events' years are distributed uniformly
+**    over a range of years (by default, 1801 to 2015)
+**  --the mix of date forms used in the lines generated: each of the seven
+**    forms accepted by CalendarDate is given a weight.  By default, each has
+**    weight 1, except for Month_d_y ("December 25, 1978"), which has weight
+**    0 because it contains the delimiter: a line in that form splits into
+**    four parts, and is rejected by the Event(String) constructor.  Giving
+**    it a weight thus yields a proportion of bad lines.
+**  --the number of distinct principals and descriptions, and the skew of
+**    each: the k-th most frequent occurs with probability proportional to
+**    1/k^s (a Zipf distribution), s being the skew (0 for uniform)
+**  --the proportion of principals and descriptions having the delimiter
+**    embedded in them (e.g., "Principal 17, Inc."); in a line, the delimiter
+**    is replaced by Event.REPLACEMENT, as by Event.toString()
+**  --the proportion of events that are duplicates of (i.e., have the same
+**    date, principal and description as) an event generated recently
+**
+**  Run as a program, it writes a file:
+**
+**     java EventGenerator <number of events> <file name> [<seed>]
+*/
+public class EventGenerator {
+
+   // class constants (for the forms of date, as numbered by CalendarDateParser)
+   // --------------------------------------------------------------------------
+   public static final int YYYYMMDD = CalendarDateParser.YYYYMMDD;
+   public static final int YMMDD = CalendarDateParser.YMMDD;
+   public static final int MONTH_D_Y = CalendarDateParser.MONTH_D_Y;
+   public static final int D_MONTH_Y = CalendarDateParser.D_MONTH_Y;
+   public static final int M_D_Y = CalendarDateParser.M_D_Y;
+   public static final int D_MON_Y = CalendarDateParser.D_MON_Y;
+   public static final int Y_M_D = CalendarDateParser.Y_M_D;
+
+   private static final int FORM_COUNT = CalendarDateParser.FORM_COUNT;
+
+
+   // class constants (for defaults)
+   // ------------------------------
+   private static final int DEFAULT_FIRST_YEAR = 1801;
+   private static final int DEFAULT_LAST_YEAR = 2015;
+   private static final int DEFAULT_PRINCIPALS = 10000;
+   private static final int DEFAULT_DESCRIPTIONS = 100;
+   private static final double DEFAULT_SKEW = 1.0;
+   private static final int RECENT = 4096;   // # of recent events from which
+                                             // duplicates are drawn
+
+
+   // instance variables
+   // ------------------
+   private final long seed;     // determines the events generated
+   private final Random random;
+
+   private int firstYear;       // the years of the events range over
+   private int lastYear;        // firstYear..lastYear
+   private int[] formWeights;   // formWeights[f] is the weight of form f
+   private int totalWeight;     // the sum of formWeights[]
+
+   private double[] principalOdds;    // the cumulative distributions of the
+   private double[] descriptionOdds;  // ranks of principals and descriptions
+   private double delimiterRatio;     // proportion of names containing the
+                                      // delimiter
+   private double duplicateRatio;     // proportion of events that are duplicates
+
+   private Event[] recent;      // the last RECENT events generated (cyclically)
+   private long generated;      // # of events generated so far
+
+
+   // constructor
+   // -----------
+
+   /** Initializes this generator to generate the events determined by the
+   **  given seed, with the default options.
+   */
+   public EventGenerator(long seed) {
+      this.seed = seed;
+      random = new Random(seed);
+      firstYear = DEFAULT_FIRST_YEAR;
+      lastYear = DEFAULT_LAST_YEAR;
+      setFormWeights(new int[] {1, 1, 0, 1, 1, 1, 1});
+      principalOdds = zipf(DEFAULT_PRINCIPALS, DEFAULT_SKEW);
+      descriptionOdds = zipf(DEFAULT_DESCRIPTIONS, DEFAULT_SKEW);
+      delimiterRatio = 0.0;
+      duplicateRatio = 0.0;
+      recent = new Event[RECENT];
+      generated = 0;
+   }
+
+   // mutators (options)
+   // ------------------
+
+   /** Sets the range of years over which the events' dates are spread.
+   */
+   public void setDateSpread(int firstYear, int lastYear) {
+      if (firstYear < 1 || lastYear > 9999 || firstYear > lastYear) {
+         throw new IllegalArgumentException("Illegal range of years");
+      }
+      this.firstYear = firstYear;
+      this.lastYear = lastYear;
+   }
+
+   /** Sets the weights of the seven forms of date (indexed by the form
+   **  constants YYYYMMDD, etc.) in the lines generated.
+   */
+   public void setFormWeights(int[] weights) {
+      if (weights.length != FORM_COUNT) {
+         throw new IllegalArgumentException("Illegal number of weights");
+      }
+      int total = 0;
+      for (int w : weights) {
+         if (w < 0) {
+            throw new IllegalArgumentException("Illegal weight");
+         }
+         total = total + w;
+      }
+      if (total == 0) {
+         throw new IllegalArgumentException("Illegal weights: all zero");
+      }
+      formWeights = Arrays.copyOf(weights, FORM_COUNT);
+      totalWeight = total;
+   }
+
+   /** Sets the number of distinct principals and the skew of their
+   **  distribution (0 for uniform; larger for more skewed).
+   */
+   public void setPrincipals(int count, double skew) {
+      principalOdds = zipf(count, skew);
+   }
+
+   /** Sets the number of distinct descriptions and the skew of their
+   **  distribution (0 for uniform; larger for more skewed).
+   */
+   public void setDescriptions(int count, double skew) {
+      descriptionOdds = zipf(count, skew);
+   }
+
+   /** Sets the proportion (from 0 to 1) of the distinct principals and
+   **  descriptions that have the delimiter embedded in them.
+   */
+   public void setDelimiterRatio(double ratio) {
+      delimiterRatio = checkedRatio(ratio);
+   }
+
+   /** Sets the proportion (from 0 to 1) of events that are duplicates of
+   **  events generated recently.
+   */
+   public void setDuplicateRatio(double ratio) {
+      duplicateRatio = checkedRatio(ratio);
+   }
+
+   // generators
+   // ----------
+
+   /** Returns the next event.
+   */
+   public Event nextEvent() {
+      Event result;
+      if (generated != 0 && random.nextDouble() < duplicateRatio) {
+         Event original = recent[random.nextInt((int) Math.min(generated, RECENT))];
+         result = new Event(original.dateOf(), original.principalOf(), original.descriptionOf());
+      }
+      else {
+         int year = firstYear + random.nextInt(lastYear - firstYear + 1);
+         int month = 1 + random.nextInt(12);
+         int day = 1 + random.nextInt(CalendarDateOperations.monthDays(month, year));
+         result = new Event(new CalendarDate(year, month, day),
+                            nameOf("Principal ", rankIn(principalOdds)),
+                            nameOf("Description ", rankIn(descriptionOdds)));
+      }
+      recent[(int) (generated % RECENT)] = result;
+      generated = generated + 1;
+      return result;
+   }
+
+   /** Returns the next event, described by a line of the form read by the
+   **  Event(String) constructor, its date being in a form chosen according
+   **  to the weights of the forms.
+   */
+   public String nextLine() {
+      Event e = nextEvent();
+      String canonical = e.toString();
+      return dateInForm(e.dateOf(), nextForm()) + canonical.substring(canonical.indexOf(Event.DELIMITER));
+   }
+
+   /** Returns the next n events.
+   */
+   public Event[] events(int n) {
+      Event[] result = new Event[n];
+      for (int i = 0; i < n; i++) {
+         result[i] = nextEvent();
+      }
+      return result;
+   }
+
+   /** Writes the next n lines (see nextLine()) to the given file.
+   */
+   public void write(File file, long n) throws IOException {
+      BufferedWriter out = new BufferedWriter(new FileWriter(file));
+      try {
+         for (long i = 0; i < n; i++) {
+            out.write(nextLine());
+            out.newLine();
+         }
+      }
+      finally {
+         out.close();
+      }
+   }
+
+   /** Writes the number of events given by the first argument to the file
+   **  named by the second, generated from the seed given by the third (or,
+   **  if there is none, from 0).
+   */
+   public static void main(String[] args) throws IOException {
+      if (args.length < 2) {
+         System.out.println("usage: java EventGenerator <number of events> <file name> [<seed>]");
+      }
+      else {
+         long seed = (args.length > 2) ? Long.parseLong(args[2]) : 0;
+         new EventGenerator(seed).write(new File(args[1]), Long.parseLong(args[0]));
+      }
+   }
+
+   /** Returns the string describing the given date in the given form (one of
+   **  the form constants).
+   */
+   public static String dateInForm(CalendarDate d, int form) {
+      String result;
+      if (form == YYYYMMDD) {
+         result = d.toString_YYYYMMDD();
+      }
+      else if (form == YMMDD) {
+         result = d.toString_yMMDD();
+      }
+      else if (form == MONTH_D_Y) {
+         result = d.toString_Month_d_y();
+      }
+      else if (form == D_MONTH_Y) {
+         result = d.toString_d_Month_y();
+      }
+      else if (form == M_D_Y) {
+         result = d.toString_m_d_y();
+      }
+      else if (form == D_MON_Y) {
+         result = d.toString_d_Mon_y();
+      }
+      else {
+         result = d.toString_y_m_d();
+      }
+      return result;
+   }
+
+   // private methods
+   // ---------------
+
+   /* Returns the name made up of the given prefix and rank, followed (for the
+   ** proportion of ranks given by delimiterRatio) by a suffix containing the
+   ** delimiter.  Whether a rank's name has the suffix is decided by the seed
+   ** and the rank alone, so each rank always has the same name.
+   */
+   private String nameOf(String prefix, int rank) {
+      long h = (seed ^ prefix.hashCode()) * 0x9E3779B97F4A7C15L + rank;
+      h = (h ^ (h >>> 31)) * 0xBF58476D1CE4E5B9L;
+      double u = (double) ((h ^ (h >>> 29)) >>> 11) / (1L << 53);
+      return (u < delimiterRatio) ? prefix + rank + Event.DELIMITER + " Inc." : prefix + rank;
+   }
+
+   /* Returns a rank (1, 2, ...) drawn from the given cumulative distribution.
+   */
+   private int rankIn(double[] odds) {
+      int i = Arrays.binarySearch(odds, random.nextDouble());
+      return ((i < 0) ? -i - 1 : i) + 1;
+   }
+
+   /* Returns a form of date drawn according to the weights.
+   */
+   private int nextForm() {
+      int r = random.nextInt(totalWeight);
+      int form = 0;
+      while (r >= formWeights[form]) {
+         r = r - formWeights[form];
+         form = form + 1;
+      }
+      return form;
+   }
+
+   /* Returns the cumulative distribution of a Zipf distribution over the
+   ** ranks 1..n with the given exponent: element k-1 is the probability of
+   ** a rank no greater than k.
+   */
+   private static double[] zipf(int n, double skew) {
+      if (n < 1 || skew < 0) {
+         throw new IllegalArgumentException("Illegal distribution");
+      }
+      double[] result = new double[n];
+      double sum = 0;
+      for (int k = 1; k <= n; k++) {
+         sum = sum + 1 / Math.pow(k, skew);
+         result[k-1] = sum;
+      }
+      for (int k = 0; k < n; k++) {
+         result[k] = result[k] / sum;
+      }
+      result[n-1] = 1.0;
+      return result;
+   }
+
+   /* Returns the given ratio, if it is from 0 to 1.
+   */
+   private static double checkedRatio(double ratio) {
+      if (!(ratio >= 0 && ratio <= 1)) {
+         throw new IllegalArgumentException("Illegal ratio");
+      }
+      return ratio;
+   }
+
+}
@@ -0,0 +1,369 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** An instance of this class loads events, one per line (in the form read by
+**  the Event(String) constructor), into event collections, quarantining the
+**  lines that do not describe events rather than inserting them or giving up.
+**  A line is quarantined if it is not made up of three parts or if (the
+**  loader's date parser being strict) its date is not in any of the forms
+**  accepted by CalendarDate; with a lenient parser, a line with a bad date is
+**  loaded as an event dated January 1, 1, but is still accounted for by the
+**  parser (see CalendarDateParser).
+**
+**  The loader counts the lines read, loaded and quarantined, and keeps the
+**  first of the quarantined lines (up to a limit); if a quarantine file is
+**  set, every quarantined line is also written to it (the file being
+**  created upon the first).  The counts accumulate over all of the loads
+**  made by the loader.  Events are inserted in batches (by way of
+**  EventCollection.insertAll()), each of which is appended to the
+**  collection's columns at once.
+**
+**  A loader may be made lazy (see setLazy()), in which case a file is read
+**  as bytes, in large chunks, and each line becomes a LazyEvent: only its
+**  date is parsed, its principal and description being decoded from the
+**  chunk when first asked for.  A collection into which lazy events are
+**  inserted likewise leaves the indexing of their principals and
+**  descriptions until it is needed (see EventCollection), unless it keeps
+**  its events unique.  Loading a file only to page through it by date or in
+**  order of insertion thus decodes just the strings of the events shown.
+**
+**  Like its parser, a loader is not safe for use by several threads at once.
+*/
+public class EventLoader {
+
+   // class constants
+   // ---------------
+   private static final int DEFAULT_QUARANTINE_LIMIT = 100;
+   private static final int BATCH_SIZE = 1024;
+   private static final int CHUNK_SIZE = 1 << 20;   // bytes read at once (lazily)
+
+
+   // instance variables
+   // ------------------
+   private final CalendarDateParser parser;
+   private final int quarantineLimit;      // the most lines kept in quarantine
+   private final List<String> quarantine;  // the first lines quarantined
+   private File quarantineFile;            // where quarantined lines are written
+   private BufferedWriter quarantineOut;   // (null until the first is written)
+   private boolean lazy;                   // whether files are loaded lazily
+
+   private long linesRead;
+   private long linesLoaded;
+   private long linesQuarantined;
+
+
+   // constructors
+   // ------------
+
+   /** Initializes this loader to parse dates with the given parser and to
+   **  keep the default number of quarantined lines.
+   */
+   public EventLoader(CalendarDateParser parser) {
+      this(parser, DEFAULT_QUARANTINE_LIMIT);
+   }
+
+   /** Initializes this loader to parse dates with the given parser and to
+   **  keep at most the specified number of quarantined lines.
+   */
+   public EventLoader(CalendarDateParser parser, int quarantineLimit) {
+      if (quarantineLimit < 0) {
+         throw new IllegalArgumentException("Illegal quarantine limit");
+      }
+      this.parser = parser;
+      this.quarantineLimit = quarantineLimit;
+      quarantine = new ArrayList<String>();
+      quarantineFile = null;
+      quarantineOut = null;
+      lazy = false;
+      linesRead = 0;
+      linesLoaded = 0;
+      linesQuarantined = 0;
+   }
+
+   // observers
+   // ---------
+
+   /** Returns the parser with which this loader parses dates.
+   */
+   public CalendarDateParser parserOf() { return parser; }
+
+   /** Returns true if and only if this loader is lazy.
+   */
+   public boolean isLazy() { return lazy; }
+
+   /** Returns the number of lines read.
+   */
+   public long linesReadOf() { return linesRead; }
+
+   /** Returns the number of lines loaded as events.
+   */
+   public long linesLoadedOf() { return linesLoaded; }
+
+   /** Returns the number of lines quarantined.
+   */
+   public long linesQuarantinedOf() { return linesQuarantined; }
+
+   /** Returns the quarantined lines that were kept (the first ones, up to the
+   **  limit), in the order in which they were read.
+   */
+   public List<String> quarantined() { return new ArrayList<String>(quarantine); }
+
+   // mutators
+   // --------
+
+   /** Makes this loader lazy (or not), as described above.
+   */
+   public void setLazy(boolean lazy) { this.lazy = lazy; }
+
+   /** Sets the file to which quarantined lines are written (null for none).
+   **  The file is not created unless a line is quarantined.
+   */
+   public void setQuarantineFile(File file) throws IOException {
+      closeQuarantine();
+      quarantineFile = file;
+   }
+
+   /** Closes the quarantine file, if one has been written to.
+   */
+   public void closeQuarantine() throws IOException {
+      if (quarantineOut != null) {
+         quarantineOut.close();
+         quarantineOut = null;
+      }
+   }
+
+   // loading
+   // -------
+
+   /** Loads the events described by the lines of the given file into the
+   **  given collection, returning the number of lines loaded.  If the
+   **  collection becomes full, an IllegalStateException is thrown, the events
+   **  described by the lines before the one that did not fit having been
+   **  inserted.
+   */
+   public int load(File file, EventCollection ec) throws IOException {
+      long start = EventMetrics.start();
+      EventRecordings.Load recording = new EventRecordings.Load();
+      recording.begin();
+      int result;
+      if (lazy) {
+         InputStream in = new FileInputStream(file);
+         try {
+            result = loadLazily(in, ec);
+         }
+         finally {
+            in.close();
+         }
+      }
+      else {
+         BufferedReader in = new BufferedReader(new FileReader(file));
+         try {
+            result = load(in, ec);
+         }
+         finally {
+            in.close();
+         }
+      }
+      EventMetrics.recordLoad(start, result);
+      if (recording.shouldCommit()) {
+         recording.file = file.getPath();
+         recording.events = result;
+         recording.bytes = file.length();
+         recording.commit();
+      }
+      return result;
+   }
+
+   /** Loads the events described by the lines read from the given reader
+   **  (until it is exhausted) into the given collection, as for load(File,
+   **  EventCollection).
+   */
+   public int load(BufferedReader in, EventCollection ec) throws IOException {
+      int result = 0;
+      List<Event> batch = new ArrayList<Event>(BATCH_SIZE);
+      String line = in.readLine();
+      while (line != null) {
+         Event e = eventOf(line);
+         if (e != null) {
+            batch.add(e);
+            if (batch.size() == BATCH_SIZE) {
+               result = result + insert(batch, ec);
+            }
+         }
+         line = in.readLine();
+      }
+      result = result + insert(batch, ec);
+      if (quarantineOut != null) {
+         quarantineOut.flush();
+      }
+      return result;
+   }
+
+   /** Returns the event described by the given line, or, if the line does not
+   **  describe an event, quarantines it and returns null.
+   */
+   public Event eventOf(String line) throws IOException {
+      linesRead = linesRead + 1;
+      Event result;
+      try {
+         result = new Event(line, parser);
+      }
+      catch (IllegalArgumentException e) {   // (bad format or, if strict, bad date)
+         quarantine(line);
+         result = null;
+      }
+      return result;
+   }
+
+   // private methods
+   // ---------------
+
+   /* Loads the events described by the lines read from the given stream into
+   ** the given collection as lazy events, returning the number of lines
+   ** loaded.  The stream is read into chunks, each of which begins with the
+   ** incomplete line (if any) at the end of the one before; a chunk is made
+   ** larger if need be to hold the longest line.
+   */
+   private int loadLazily(InputStream in, EventCollection ec) throws IOException {
+      int result = 0;
+      List<Event> batch = new ArrayList<Event>(BATCH_SIZE);
+      byte[] chunk = new byte[CHUNK_SIZE];
+      int carried = 0;    // # of bytes at the front of chunk carried over
+      boolean atEnd = false;
+      while (!atEnd) {
+         int filled = carried;
+         int n = 0;
+         while (n != -1 && filled < chunk.length) {
+            n = in.read(chunk, filled, chunk.length - filled);
+            filled = filled + Math.max(n, 0);
+         }
+         atEnd = (n == -1);
+         int end = atEnd ? filled : lastLineEndIn(chunk, filled);
+         int from = 0;
+         while (from < end) {
+            int to = from;
+            while (to < end && chunk[to] != '\n') {
+               to++;
+            }
+            Event e = lazyEventOf(chunk, from, (to > from && chunk[to-1] == '\r') ? to - 1 : to);
+            if (e != null) {
+               batch.add(e);
+               if (batch.size() == BATCH_SIZE) {
+                  result = result + insert(batch, ec);
+               }
+            }
+            from = to + 1;
+         }
+         if (!atEnd) {
+            carried = filled - end;
+            byte[] next = new byte[Math.max(CHUNK_SIZE, 2 * carried)];
+            System.arraycopy(chunk, end, next, 0, carried);
+            chunk = next;
+         }
+      }
+      result = result + insert(batch, ec);
+      if (quarantineOut != null) {
+         quarantineOut.flush();
+      }
+      return result;
+   }
+
+   /* Returns the lazy event described by the line in chunk[from..to-1], or,
+   ** if the line does not describe an event, quarantines it and returns null.
+   ** The line is split as by the Event(String) constructor: into the parts
+   ** between commas, less any empty parts at the end.
+   */
+   private Event lazyEventOf(byte[] chunk, int from, int to) throws IOException {
+      linesRead = linesRead + 1;
+      int last = to;
+      while (last > from && chunk[last-1] == ',') {
+         last--;
+      }
+      int first = -1;
+      int second = -1;
+      int commas = 0;
+      for (int i = from; i < last; i++) {
+         if (chunk[i] == ',') {
+            commas = commas + 1;
+            if (commas == 1) {
+               first = i;
+            }
+            else if (commas == 2) {
+               second = i;
+            }
+         }
+      }
+      Event result = null;
+      if (commas != 2) {
+         EventMetrics.recordParseFailure();
+         quarantine(new String(chunk, from, to - from, StandardCharsets.UTF_8));
+      }
+      else {
+         try {
+            CalendarDate date = parser.parse(new String(chunk, from, first - from, StandardCharsets.UTF_8));
+            result = new LazyEvent(date, chunk, first + 1, second, second + 1, last);
+         }
+         catch (IllegalArgumentException e) {   // (if strict, a bad date)
+            quarantine(new String(chunk, from, to - from, StandardCharsets.UTF_8));
+         }
+      }
+      return result;
+   }
+
+   /* Returns the position just past the last newline in chunk[0..n-1] (0 if
+   ** there is none).
+   */
+   private static int lastLineEndIn(byte[] chunk, int n) {
+      int result = n;
+      while (result != 0 && chunk[result-1] != '\n') {
+         result--;
+      }
+      return result;
+   }
+
+   /* Inserts the events in the given batch into the given collection, empties
+   ** the batch and returns the number of events inserted (or ignored as
+   ** duplicates), counting them as loaded even if the collection became full
+   ** part of the way through.
+   */
+   private int insert(List<Event> batch, EventCollection ec) {
+      int before = ec.sizeOf() + ec.duplicateCountOf();
+      int result = 0;
+      try {
+         ec.insertAll(batch.iterator());
+      }
+      finally {
+         result = ec.sizeOf() + ec.duplicateCountOf() - before;
+         linesLoaded = linesLoaded + result;
+         batch.clear();
+      }
+      return result;
+   }
+
+   /* Counts the given line as quarantined, keeping it if there is room and
+   ** writing it to the quarantine file, if there is one.
+   */
+   private void quarantine(String line) throws IOException {
+      linesQuarantined = linesQuarantined + 1;
+      if (quarantine.size() < quarantineLimit) {
+         quarantine.add(line);
+      }
+      if (quarantineFile != null) {
+         if (quarantineOut == null) {
+            quarantineOut = new BufferedWriter(new FileWriter(quarantineFile, true));
+         }
+         quarantineOut.write(line);
+         quarantineOut.newLine();
+      }
+   }
+
+}
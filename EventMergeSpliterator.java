@@ -0,0 +1,128 @@
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/* An instance of this Java class is a Spliterator that merges several
+** sequences of events, each of which is already arranged in the order given
+** by some comparator, into a single sequence arranged in that order (i.e., a
+** k-way merge).  A priority queue holds the next event of each sequence, so
+** each event visited costs O(log k) time, k being the number of sequences.
+** Events that compare as equal are visited in the order in which their
+** sequences were given (or, if so specified, in the reverse order).
+**
+** Where events of one sequence may have been inserted before or after those
+** of another (as in the parts of a PartitionedEventCollection), each event
+** may instead be given a sequence number, recording when it was inserted,
+** and events that compare as equal are then visited in order of their
+** numbers (or in the reverse order), so that ties are broken as an
+** EventCollection holding all of the events would break them.
+**
+** The sequences are not consulted until the first event is asked for, so a
+** stream built upon the spliterator does no work until it is traversed.  A
+** merge cannot be divided among threads, so trySplit() always returns null.
+*/
+
+public class EventMergeSpliterator implements Spliterator<Event> {
+
+   private final List<Iterator<Event>> sources;  // the sequences to be merged
+   private final List<PrimitiveIterator.OfLong> numbers;  // the sequence numbers
+                                  // of their events, one for one (or null)
+   private final Comparator<Event> comparator;   // the order of each sequence
+   private final boolean latestFirst;  // true iff ties are broken in reverse
+   private final long estimatedSize;             // # of events, if known
+
+   private PriorityQueue<Head> heads;  // the next event of each nonempty
+                                       // sequence (null until first used)
+   private long visited;               // # of events visited so far
+
+   /** Initializes this spliterator to merge the sequences supplied by the
+   **  given iterators, each of which is arranged in the order given by the
+   **  comparator.  The estimated total number of events (or Long.MAX_VALUE,
+   **  if unknown) is reported by estimateSize().
+   */
+   public EventMergeSpliterator(List<Iterator<Event>> sources, Comparator<Event> comparator,
+                                long estimatedSize) {
+      this(sources, null, comparator, false, estimatedSize);
+   }
+
+   /** Initializes this spliterator as above, except that ties are broken by
+   **  the sequence numbers supplied (one for one with the events of the
+   **  sequences) by the given iterators, or, if numbers is null, by the
+   **  order in which the sequences are given; and if latestFirst is true,
+   **  ties are broken the other way round, the greater number (or the
+   **  sequence given later) coming first.
+   */
+   public EventMergeSpliterator(List<Iterator<Event>> sources, List<PrimitiveIterator.OfLong> numbers,
+                                Comparator<Event> comparator, boolean latestFirst,
+                                long estimatedSize) {
+      this.sources = sources;
+      this.numbers = numbers;
+      this.comparator = comparator;
+      this.latestFirst = latestFirst;
+      this.estimatedSize = estimatedSize;
+      this.heads = null;
+      this.visited = 0;
+   }
+
+   public boolean tryAdvance(Consumer<? super Event> action) {
+      if (heads == null) {
+         heads = new PriorityQueue<Head>(Math.max(1, sources.size()), (a, b) -> {
+            int c = comparator.compare(a.event, b.event);
+            if (c == 0) {
+               c = latestFirst ? Long.compare(b.number, a.number) : Long.compare(a.number, b.number);
+            }
+            return c;
+         });
+         for (int i = 0; i < sources.size(); i++) {
+            advance(i);
+         }
+      }
+      Head head = heads.poll();
+      if (head != null) {
+         action.accept(head.event);
+         visited = visited + 1;
+         advance(head.source);
+      }
+      return head != null;
+   }
+
+   public Spliterator<Event> trySplit() { return null; }
+
+   public long estimateSize() {
+      return (estimatedSize == Long.MAX_VALUE) ? estimatedSize : Math.max(0, estimatedSize - visited);
+   }
+
+   public int characteristics() {
+      return ORDERED | NONNULL;
+   }
+
+   /* Places the next event (if any) of the i-th sequence in the queue.
+   */
+   private void advance(int i) {
+      Iterator<Event> source = sources.get(i);
+      if (source.hasNext()) {
+         heads.add(new Head(source.next(), (numbers == null) ? i : numbers.get(i).nextLong(), i));
+      }
+   }
+
+   /* An instance of this class is the next event of one of the sequences,
+   ** together with its sequence number (or the number of its sequence, if
+   ** the events have none) and the number of its sequence.
+   */
+   private static class Head {
+      private final Event event;
+      private final long number;
+      private final int source;
+
+      private Head(Event event, long number, int source) {
+         this.event = event;
+         this.number = number;
+         this.source = source;
+      }
+   }
+
+}
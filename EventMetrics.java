@@ -0,0 +1,255 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/** This class keeps metrics describing the work done by event collections:
+**  counts of the operations performed (insertions, duplicates ignored or
+**  rejected instead of being inserted, resets, calls of next(), loads and
+**  saves of event files, lines that could not be parsed, and orderings
+**  built) and histograms of the time taken by insertions, resets,
+**  loads and saves (see LatencyHistogram).  The metrics cover every
+**  collection in the program.
+**
+**  A client reads the metrics by way of snapshot(), which copies them, or
+**  over JMX, once registerMBean() has published them (as the MXBean named
+**  "EventCollection:type=Metrics").
+**
+**  The counters are LongAdders, which spread contending threads over
+**  several cells, so that recording costs little even when many threads
+**  record at once.  Metrics can also be turned off altogether by starting
+**  the program with -Deventcollection.metrics=false.  Whether they are kept
+**  is then a constant (ENABLED), so the JIT compiler removes the recording
+**  code (and the calls of System.nanoTime() made for it) entirely.
+**
+**  The record...() methods are for the use of the classes doing the work.
+**  A timed operation calls start() first and passes its result on.
+*/
+public class EventMetrics {
+
+   /** True unless the system property eventcollection.metrics is "false".
+   */
+   public static final boolean ENABLED =
+      !"false".equals(System.getProperty("eventcollection.metrics"));
+
+   // class variables (the metrics)
+   // -----------------------------
+   private static final LongAdder inserts = new LongAdder();
+   private static final LongAdder duplicates = new LongAdder();
+   private static final LongAdder resets = new LongAdder();
+   private static final LongAdder nexts = new LongAdder();
+   private static final LongAdder loads = new LongAdder();
+   private static final LongAdder eventsLoaded = new LongAdder();
+   private static final LongAdder saves = new LongAdder();
+   private static final LongAdder eventsSaved = new LongAdder();
+   private static final LongAdder parseFailures = new LongAdder();
+   private static final LongAdder orderingsBuilt = new LongAdder();
+   private static final LongAdder eventsSorted = new LongAdder();
+
+   private static final LatencyHistogram insertLatency = new LatencyHistogram();
+   private static final LatencyHistogram resetLatency = new LatencyHistogram();
+   private static final LatencyHistogram loadLatency = new LatencyHistogram();
+   private static final LatencyHistogram saveLatency = new LatencyHistogram();
+
+   private EventMetrics() { }   // (no instances)
+
+   // observers
+   // ---------
+
+   /** Returns a copy of the metrics as they stand.
+   */
+   public static Snapshot snapshot() { return new Snapshot(); }
+
+   /** Publishes the metrics over JMX, as the MXBean named
+   **  "EventCollection:type=Metrics" (unless this has already been done).
+   */
+   public static synchronized void registerMBean() {
+      try {
+         ObjectName name = new ObjectName("EventCollection:type=Metrics");
+         if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), name);
+         }
+      }
+      catch (JMException e) {
+         throw new IllegalStateException("cannot register metrics MXBean", e);
+      }
+   }
+
+   // recording methods
+   // -----------------
+
+   /** Returns the time at which a timed operation starts (or 0, if metrics
+   **  are not kept).
+   */
+   public static long start() {
+      return ENABLED ? System.nanoTime() : 0;
+   }
+
+   /** Records an insertion that started at the given time.
+   */
+   public static void recordInsert(long start) {
+      if (ENABLED) {
+         inserts.increment();
+         insertLatency.record(System.nanoTime() - start);
+      }
+   }
+
+   /** Records the insertion of the given number of events, all at once,
+   **  starting at the given time.  (Each is counted as an insertion taking
+   **  its share of the time.)
+   */
+   public static void recordInserts(long start, long events) {
+      if (ENABLED && events != 0) {
+         inserts.add(events);
+         insertLatency.record((System.nanoTime() - start) / events, events);
+      }
+   }
+
+   /** Records a duplicate event that was ignored or rejected (rather than
+   **  inserted).
+   */
+   public static void recordDuplicate() {
+      if (ENABLED) {
+         duplicates.increment();
+      }
+   }
+
+   /** Records a reset that started at the given time.
+   */
+   public static void recordReset(long start) {
+      if (ENABLED) {
+         resets.increment();
+         resetLatency.record(System.nanoTime() - start);
+      }
+   }
+
+   /** Records a call of next().
+   */
+   public static void recordNext() {
+      if (ENABLED) {
+         nexts.increment();
+      }
+   }
+
+   /** Records the loading, started at the given time, of the given number
+   **  of events from a file.
+   */
+   public static void recordLoad(long start, long events) {
+      if (ENABLED) {
+         loads.increment();
+         eventsLoaded.add(events);
+         loadLatency.record(System.nanoTime() - start);
+      }
+   }
+
+   /** Records the saving, started at the given time, of the given number of
+   **  events to a file.
+   */
+   public static void recordSave(long start, long events) {
+      if (ENABLED) {
+         saves.increment();
+         eventsSaved.add(events);
+         saveLatency.record(System.nanoTime() - start);
+      }
+   }
+
+   /** Records the failure to parse an event or a date.
+   */
+   public static void recordParseFailure() {
+      if (ENABLED) {
+         parseFailures.increment();
+      }
+   }
+
+   /** Records the sorting of the given number of events in order to build
+   **  (or bring up to date) an ordering.
+   */
+   public static void recordSort(long events) {
+      if (ENABLED) {
+         orderingsBuilt.increment();
+         eventsSorted.add(events);
+      }
+   }
+
+   // nested classes
+   // --------------
+
+   /** An instance of this class is a copy of the metrics, made at the time
+   **  of its creation.  (As the metrics are copied one by one while other
+   **  threads may be recording, they need not agree with one another
+   **  exactly.)
+   */
+   public static class Snapshot {
+      private final long insertCount = inserts.sum();
+      private final long duplicateCount = duplicates.sum();
+      private final long resetCount = resets.sum();
+      private final long nextCount = nexts.sum();
+      private final long loadCount = loads.sum();
+      private final long eventsLoadedCount = eventsLoaded.sum();
+      private final long saveCount = saves.sum();
+      private final long eventsSavedCount = eventsSaved.sum();
+      private final long parseFailureCount = parseFailures.sum();
+      private final long orderingsBuiltCount = orderingsBuilt.sum();
+      private final long eventsSortedCount = eventsSorted.sum();
+      private final LatencyHistogram insertLatencies = insertLatency.copy();
+      private final LatencyHistogram resetLatencies = resetLatency.copy();
+      private final LatencyHistogram loadLatencies = loadLatency.copy();
+      private final LatencyHistogram saveLatencies = saveLatency.copy();
+
+      private Snapshot() { }
+
+      public long insertCount() { return insertCount; }
+      public long duplicateCount() { return duplicateCount; }
+      public long resetCount() { return resetCount; }
+      public long nextCount() { return nextCount; }
+      public long loadCount() { return loadCount; }
+      public long eventsLoaded() { return eventsLoadedCount; }
+      public long saveCount() { return saveCount; }
+      public long eventsSaved() { return eventsSavedCount; }
+      public long parseFailureCount() { return parseFailureCount; }
+      public long orderingsBuilt() { return orderingsBuiltCount; }
+      public long eventsSorted() { return eventsSortedCount; }
+      public LatencyHistogram insertLatency() { return insertLatencies; }
+      public LatencyHistogram resetLatency() { return resetLatencies; }
+      public LatencyHistogram loadLatency() { return loadLatencies; }
+      public LatencyHistogram saveLatency() { return saveLatencies; }
+
+      /** Returns a description of the metrics, one per line.
+      */
+      public String toString() {
+         return "inserts: " + insertCount + ", " + insertLatencies + "\n" +
+                "duplicates: " + duplicateCount + "\n" +
+                "resets: " + resetCount + ", " + resetLatencies + "\n" +
+                "next() calls: " + nextCount + "\n" +
+                "loads: " + loadCount + " (" + eventsLoadedCount + " events), " + loadLatencies + "\n" +
+                "saves: " + saveCount + " (" + eventsSavedCount + " events), " + saveLatencies + "\n" +
+                "parse failures: " + parseFailureCount + "\n" +
+                "orderings built: " + orderingsBuiltCount + " (" + eventsSortedCount + " events sorted)";
+      }
+   }
+
+   /* An instance of this class publishes the metrics (as they stand at each
+   ** call) over JMX.
+   */
+   private static class Bean implements EventMetricsMXBean {
+      public long getInsertCount() { return inserts.sum(); }
+      public long getDuplicateCount() { return duplicates.sum(); }
+      public long getResetCount() { return resets.sum(); }
+      public long getNextCount() { return nexts.sum(); }
+      public long getLoadCount() { return loads.sum(); }
+      public long getEventsLoaded() { return eventsLoaded.sum(); }
+      public long getSaveCount() { return saves.sum(); }
+      public long getEventsSaved() { return eventsSaved.sum(); }
+      public long getParseFailureCount() { return parseFailures.sum(); }
+      public long getOrderingsBuilt() { return orderingsBuilt.sum(); }
+      public long getEventsSorted() { return eventsSorted.sum(); }
+      public double getInsertMeanNanos() { return insertLatency.meanOf(); }
+      public long getInsertP99Nanos() { return insertLatency.percentileOf(0.99); }
+      public double getResetMeanNanos() { return resetLatency.meanOf(); }
+      public long getResetP99Nanos() { return resetLatency.percentileOf(0.99); }
+      public long getResetMaxNanos() { return resetLatency.maxOf(); }
+      public double getLoadMeanNanos() { return loadLatency.meanOf(); }
+      public double getSaveMeanNanos() { return saveLatency.meanOf(); }
+   }
+
+}
@@ -0,0 +1,27 @@
+/** The management interface through which the metrics kept by EventMetrics
+**  are published over JMX (see EventMetrics.registerMBean()).  Durations are
+**  in nanoseconds.
+*/
+public interface EventMetricsMXBean {
+
+   long getInsertCount();
+   long getDuplicateCount();
+   long getResetCount();
+   long getNextCount();
+   long getLoadCount();
+   long getEventsLoaded();
+   long getSaveCount();
+   long getEventsSaved();
+   long getParseFailureCount();
+   long getOrderingsBuilt();
+   long getEventsSorted();
+
+   double getInsertMeanNanos();
+   long getInsertP99Nanos();
+   double getResetMeanNanos();
+   long getResetP99Nanos();
+   long getResetMaxNanos();
+   double getLoadMeanNanos();
+   double getSaveMeanNanos();
+
+}
@@ -0,0 +1,183 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+/** An instance of this class specifies an order in which the events of an
+**  EventCollection can be iterated over.  An order is made up of one or more
+**  sort keys, each of which names a field of an event (its date, principal or
+**  description, or its position in order of insertion) and a direction
+**  (ascending or descending).  Events are ordered by the first key; events
+**  that agree on the first key are ordered by the second; and so on.  Events
+**  that agree on every key are left in order of insertion.
+**
+**  For example, "by principal, then by date, latest first" is specified by
+**
+**     EventOrder.by(EventOrder.PRINCIPAL).thenDescending(EventOrder.DATE)
+**
+**  Each of the four iteration modes of EventCollection corresponds to an
+**  order made up of a single ascending key (see BY_INSERTION, BY_DATE, etc.).
+**
+**  Instances are immutable, and two instances are equal if they specify the
+**  same keys, so an EventCollection can cache the ordering it has computed for
+**  an order and reuse it for any equal order given later.
+*/
+public class EventOrder {
+
+   // class constants (for the fields that sort keys can name)
+   // ---------------------------------------------------------
+   public static final int INSERTION = 0;
+   public static final int DATE = 1;
+   public static final int PRINCIPAL = 2;
+   public static final int DESCRIPTION = 3;
+
+   private static final String[] FIELD_NAMES = {"insertion", "date", "principal", "description"};
+
+   // class constants (for the orders of the iteration modes)
+   // -------------------------------------------------------
+   public static final EventOrder BY_INSERTION = by(INSERTION);
+   public static final EventOrder BY_DATE = by(DATE);
+   public static final EventOrder BY_PRINCIPAL = by(PRINCIPAL);
+   public static final EventOrder BY_DESCRIPTION = by(DESCRIPTION);
+
+   // instance variables
+   // ------------------
+   private final int[] fields;           // fields[i] is the field of the i-th key
+   private final boolean[] descending;   // descending[i] is true iff the i-th
+                                         // key is in descending order
+
+   // constructors
+   // ------------
+
+   /* Initializes this order to consist of the specified keys.
+   */
+   private EventOrder(int[] fields, boolean[] descending) {
+      this.fields = fields;
+      this.descending = descending;
+   }
+
+   /** Returns the order made up of the single key specified, ascending.
+   */
+   public static EventOrder by(int field) {
+      return new EventOrder(new int[0], new boolean[0]).then(field, false);
+   }
+
+   /** Returns the order made up of the single key specified, descending.
+   */
+   public static EventOrder byDescending(int field) {
+      return new EventOrder(new int[0], new boolean[0]).then(field, true);
+   }
+
+   /** Returns the order consisting of this order's keys followed by the
+   **  specified key, ascending.
+   */
+   public EventOrder then(int field) { return then(field, false); }
+
+   /** Returns the order consisting of this order's keys followed by the
+   **  specified key, descending.
+   */
+   public EventOrder thenDescending(int field) { return then(field, true); }
+
+   // observers
+   // ---------
+
+   /** Returns the number of keys making up this order.
+   */
+   public int keyCount() { return fields.length; }
+
+   /** Returns the field named by the i-th key (counting from 0).
+   */
+   public int fieldAt(int i) { return fields[i]; }
+
+   /** Returns true if and only if the i-th key (counting from 0) is descending.
+   */
+   public boolean isDescendingAt(int i) { return descending[i]; }
+
+   /** Returns true if and only if events that agree on every key before the
+   **  first one naming the order of insertion (or on every key, if none
+   **  does) are to be visited latest inserted first, i.e., if that key is
+   **  descending.
+   */
+   public boolean isLatestInsertedFirst() {
+      boolean result = false;
+      boolean found = false;
+      for (int i = 0; !found && i < fields.length; i++) {
+         found = (fields[i] == INSERTION);
+         result = found && descending[i];
+      }
+      return result;
+   }
+
+   /** Returns true if and only if this order is simply the order of insertion
+   **  (in which case no sorting is needed to obtain it).
+   */
+   public boolean isInsertionOrder() {
+      return fields[0] == INSERTION && !descending[0];
+   }
+
+   /** Returns a comparator that compares events by the keys of this order.
+   **  A key naming the order of insertion cannot be judged from the events
+   **  themselves, so it (and any key following it) is disregarded; events
+   **  that agree on the other keys compare as equal.  (Those merging
+   **  sequences of events must break such ties themselves, in the direction
+   **  given by isLatestInsertedFirst(); see EventMergeSpliterator.)
+   */
+   public Comparator<Event> comparator() {
+      return (a, b) -> {
+         int c = 0;
+         for (int i = 0; c == 0 && i < fields.length && fields[i] != INSERTION; i++) {
+            if (fields[i] == DATE) {
+               c = Integer.compare(a.dateOf().toKey(), b.dateOf().toKey());
+            }
+            else if (fields[i] == PRINCIPAL) {
+               c = a.principalOf().compareTo(b.principalOf());
+            }
+            else {  // (fields[i] == DESCRIPTION)
+               c = a.descriptionOf().compareTo(b.descriptionOf());
+            }
+            if (descending[i]) {
+               c = -c;
+            }
+         }
+         return c;
+      };
+   }
+
+   public boolean equals(Object that) {
+      return (that instanceof EventOrder) &&
+             Arrays.equals(fields, ((EventOrder) that).fields) &&
+             Arrays.equals(descending, ((EventOrder) that).descending);
+   }
+
+   public int hashCode() {
+      return 31 * Arrays.hashCode(fields) + Arrays.hashCode(descending);
+   }
+
+   /** Returns a description of this order, e.g. "principal, date descending".
+   */
+   public String toString() {
+      String result = "";
+      for (int i = 0; i < fields.length; i++) {
+         result = result + ((i == 0) ? "" : ", ") + FIELD_NAMES[fields[i]] +
+                  (descending[i] ? " descending" : "");
+      }
+      return result;
+   }
+
+   // private methods
+   // ---------------
+
+   /* Returns the order consisting of this order's keys followed by the
+   ** specified key, in the specified direction.
+   */
+   private EventOrder then(int field, boolean isDescending) {
+      if (field < INSERTION || field > DESCRIPTION) {
+         throw new IllegalArgumentException("Illegal sort key field");
+      }
+      int n = fields.length;
+      int[] newFields = Arrays.copyOf(fields, n + 1);
+      boolean[] newDescending = Arrays.copyOf(descending, n + 1);
+      newFields[n] = field;
+      newDescending[n] = isDescending;
+      return new EventOrder(newFields, newDescending);
+   }
+
+}
@@ -0,0 +1,91 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** This class groups the JDK Flight Recorder events emitted by the event
+**  collection classes, so that loads, saves, the building of orderings and
+**  resets appear in a flight recording (e.g., one started with
+**  -XX:StartFlightRecording) alongside the JVM's own events, such as those
+**  for garbage collection.  Each records its duration (from begin() to
+**  commit()) and the amount of work done.
+**
+**  (The recording events are named jdk.jfr.Event in full throughout, as the
+**  name Event on its own denotes the event collection's Event class.)  When
+**  no recording is in progress, or these events are not enabled in it,
+**  begin() and commit() cost next to nothing.
+*/
+public class EventRecordings {
+
+   private EventRecordings() { }   // (no instances)
+
+   /** Emitted for each file of events loaded.
+   */
+   @Name("eventcollection.Load")
+   @Label("Event File Load")
+   @Category("Event Collection")
+   public static class Load extends jdk.jfr.Event {
+      @Label("File")
+      public String file;
+
+      @Label("Events")
+      @Description("Number of events loaded")
+      public long events;
+
+      @Label("Bytes")
+      @DataAmount
+      public long bytes;
+   }
+
+   /** Emitted for each file of events saved.
+   */
+   @Name("eventcollection.Save")
+   @Label("Event File Save")
+   @Category("Event Collection")
+   public static class Save extends jdk.jfr.Event {
+      @Label("File")
+      public String file;
+
+      @Label("Events")
+      @Description("Number of events saved")
+      public long events;
+
+      @Label("Bytes")
+      @DataAmount
+      public long bytes;
+   }
+
+   /** Emitted each time an ordering is built or brought up to date.
+   */
+   @Name("eventcollection.OrderingBuild")
+   @Label("Ordering Build")
+   @Category("Event Collection")
+   public static class OrderingBuild extends jdk.jfr.Event {
+      @Label("Order")
+      public String order;
+
+      @Label("Events Sorted")
+      @Description("Number of events sorted (the rest being merged in from the cached ordering)")
+      public int sorted;
+
+      @Label("Events")
+      @Description("Number of events covered by the ordering")
+      public int events;
+   }
+
+   /** Emitted for each reset() of an event collection.
+   */
+   @Name("eventcollection.Reset")
+   @Label("Iteration Reset")
+   @Category("Event Collection")
+   public static class Reset extends jdk.jfr.Event {
+      @Label("Order")
+      public String order;
+
+      @Label("Events")
+      @Description("Number of events covered by the iteration")
+      public int events;
+   }
+
+}
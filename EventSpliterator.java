@@ -0,0 +1,108 @@
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/* An instance of this Java class is a Spliterator over a range of the events
+** held in an EventCollection's array, visited either in order of position
+** or in the order given by an ordering (i.e., a permutation of positions, as
+** produced by IndexSort).  It underlies the stream() and parallelStream()
+** methods of EventCollection.
+**
+** Because the underlying array and ordering are never modified over the range
+** covered, the spliterator is IMMUTABLE, and because splitting simply halves
+** the range, it is SIZED and SUBSIZED; parallel streams therefore divide the
+** work evenly among the threads of the common pool.
+**
+** A spliterator may also be given a test of which positions are visible, so
+** as to pass over the events that have been removed from the collection.
+** Such a spliterator still splits evenly, but, as the number of events it
+** will visit is not known in advance, it is neither SIZED nor SUBSIZED.
+*/
+
+public class EventSpliterator implements Spliterator<Event> {
+
+   private final Event[] events;   // the events, stored at positions 0..
+   private final int[] ordering;   // positions in visiting order, or null to
+                                   // visit events[lo..hi-1] directly
+   private int lo;                 // the range lo..hi-1 (of ordering[], if
+   private final int hi;           // any, otherwise of events[]) is still to
+                                   // be visited
+   private final IntPredicate visible;  // which positions of events[] to
+                                        // visit (null if all of them)
+
+   /** Initializes this spliterator to visit events[ordering[lo]],
+   **  events[ordering[lo+1]], ..., events[ordering[hi-1]], or, if ordering
+   **  is null, events[lo..hi-1].
+   */
+   public EventSpliterator(Event[] events, int[] ordering, int lo, int hi) {
+      this(events, ordering, lo, hi, null);
+   }
+
+   /** Initializes this spliterator as above, except that it visits only the
+   **  events at the positions k of events[] for which visible.test(k) is true
+   **  (or every event, if visible is null).
+   */
+   public EventSpliterator(Event[] events, int[] ordering, int lo, int hi, IntPredicate visible) {
+      this.events = events;
+      this.ordering = ordering;
+      this.lo = lo;
+      this.hi = hi;
+      this.visible = visible;
+   }
+
+   public boolean tryAdvance(Consumer<? super Event> action) {
+      boolean result = false;
+      while (!result && lo < hi) {
+         int k = positionAt(lo);
+         lo = lo + 1;
+         if (visible == null || visible.test(k)) {
+            action.accept(events[k]);
+            result = true;
+         }
+      }
+      return result;
+   }
+
+   public void forEachRemaining(Consumer<? super Event> action) {
+      int i = lo;
+      lo = hi;
+      if (visible == null) {
+         for (; i < hi; i++) {
+            action.accept(events[positionAt(i)]);
+         }
+      }
+      else {
+         for (; i < hi; i++) {
+            int k = positionAt(i);
+            if (visible.test(k)) {
+               action.accept(events[k]);
+            }
+         }
+      }
+   }
+
+   public Spliterator<Event> trySplit() {
+      Spliterator<Event> result = null;
+      int mid = (lo + hi) >>> 1;
+      if (lo < mid) {
+         result = new EventSpliterator(events, ordering, lo, mid, visible);
+         lo = mid;
+      }
+      return result;
+   }
+
+   public long estimateSize() { return hi - lo; }
+
+   public int characteristics() {
+      return (visible == null) ? ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL
+                               : ORDERED | IMMUTABLE | NONNULL;
+   }
+
+   /* Returns the position (in events[]) of the event at the given point in
+   ** the visiting order.
+   */
+   private int positionAt(int i) {
+      return (ordering == null) ? i : ordering[i];
+   }
+
+}
@@ -0,0 +1,204 @@
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/** An instance of this class is a materialized view of an EventCollection:
+**  the result of a query, made up of a filter (which events to include) and,
+**  optionally, a way of grouping the included events (as for
+**  EventAggregation), that is kept up to date as events are inserted into
+**  the collection.  For example, the number of deaths per decade is the view
+**
+**     new EventView(e -> e.descriptionOf().equals("Death"), EventAggregation.BY_DECADE)
+**
+**  A view is registered with a collection by way of the collection's
+**  register() method, which brings it up to date with the events already in
+**  the collection; thereafter, each insertion passes the new event to the
+**  view, which costs O(1) beyond the evaluation of the filter (or, for a
+**  grouped view, O(log d), d being the number of distinct dates in the
+**  event's group; see EventAggregation).  Removing an event from the
+**  collection likewise removes it from the view, at the same cost for a
+**  grouped view and in O(log n) time for an ungrouped one.  The filter must
+**  therefore give the same answer each time it is applied to the same
+**  event.  Reading the view takes time proportional to the size of the
+**  result rather than to the size of the collection.
+**
+**  An ungrouped view keeps the events passing its filter, in order of
+**  insertion, along with their positions in the collection (by which a
+**  removed event is found by binary search and marked as removed, until
+**  the collection is next compacted); a grouped view keeps only the
+**  aggregation of those events.
+*/
+public class EventView {
+
+   // class constant
+   // --------------
+   private static final int UNGROUPED = -1;
+
+   // instance variables
+   // ------------------
+   private final Predicate<? super Event> filter;  // which events to include
+   private final int grouping;   // how to group them (or UNGROUPED)
+
+   private boolean registered;   // true iff this view has been registered
+   private Event[] events;       // the events included (if UNGROUPED), in
+                                 // events[0..count-1], with null for those
+                                 // removed
+   private int[] positions;      // positions[i] is the position of events[i]
+                                 // in the collection (ascending)
+   private int count;            // # of elements of events[] in use
+   private int removedCount;     // # of them that are null
+   private EventAggregation aggregation;   // their aggregation (if grouped)
+
+   // constructors
+   // ------------
+
+   /** Initializes this view to include the events passing the given filter,
+   **  ungrouped.
+   */
+   public EventView(Predicate<? super Event> filter) {
+      this.filter = filter;
+      this.grouping = UNGROUPED;
+      this.registered = false;
+   }
+
+   /** Initializes this view to include the events passing the given filter,
+   **  grouped as specified by one of the constants of EventAggregation.
+   */
+   public EventView(Predicate<? super Event> filter, int grouping) {
+      if (grouping < EventAggregation.BY_YEAR || grouping > EventAggregation.BY_DECADE) {
+         throw new IllegalArgumentException("Illegal grouping value");
+      }
+      this.filter = filter;
+      this.grouping = grouping;
+      this.registered = false;
+   }
+
+   // observers
+   // ---------
+
+   /** Returns the way in which this view groups events, or -1 if it is
+   **  ungrouped.
+   */
+   public int groupingOf() { return grouping; }
+
+   /** Returns the number of events included in this view.
+   */
+   public int sizeOf() {
+      int result = 0;
+      if (events != null) {
+         result = count - removedCount;
+      }
+      else if (aggregation != null) {
+         for (int key : aggregation.keys()) {
+            result = result + aggregation.countOf(key);
+         }
+      }
+      return result;
+   }
+
+   /** Returns a stream of the events included in this (ungrouped) view, in
+   **  order of insertion.
+   */
+   public Stream<Event> events() {
+      if (grouping != UNGROUPED) {
+         throw new IllegalStateException("view is grouped");
+      }
+      return (events == null) ? Stream.empty() :
+             Arrays.stream(events, 0, count).filter(Objects::nonNull);
+   }
+
+   /** Returns the aggregation of the events included in this (grouped) view,
+   **  or null if the view has yet to be registered with a collection.
+   */
+   public EventAggregation aggregation() {
+      if (grouping == UNGROUPED) {
+         throw new IllegalStateException("view is not grouped");
+      }
+      return aggregation;
+   }
+
+   // mutators (for use by EventCollection)
+   // -------------------------------------
+
+   /* Readies this view to receive events from a collection whose principals
+   ** and descriptions are assigned ids by the given dictionaries.  A view can
+   ** be registered with only one collection.
+   */
+   void register(StringIndex principalIndex, StringIndex descriptionIndex) {
+      if (registered) {
+         throw new IllegalStateException("view already registered");
+      }
+      registered = true;
+      if (grouping == UNGROUPED) {
+         events = new Event[16];
+         positions = new int[16];
+         count = 0;
+         removedCount = 0;
+      }
+      else {
+         StringIndex labels = (grouping == EventAggregation.BY_PRINCIPAL) ? principalIndex :
+                              (grouping == EventAggregation.BY_DESCRIPTION) ? descriptionIndex : null;
+         aggregation = new EventAggregation(grouping, labels);
+         aggregation.keepDates();
+      }
+   }
+
+   /* Offers this view an event inserted into the collection at position k
+   ** (after every event already offered), along with its date (as yyyymmdd)
+   ** and principal and description ids.
+   */
+   void add(Event e, int k, int date, int principal, int description) {
+      if (filter.test(e)) {
+         if (events != null) {
+            if (count == events.length) {
+               events = Arrays.copyOf(events, 2 * count);
+               positions = Arrays.copyOf(positions, 2 * count);
+            }
+            events[count] = e;
+            positions[count] = k;
+            count = count + 1;
+         }
+         else {
+            aggregation.add(date, principal, description);
+         }
+      }
+   }
+
+   /* Withdraws from this view an event removed from the collection (having
+   ** the given position, date and ids, as for add()).
+   */
+   void remove(Event e, int k, int date, int principal, int description) {
+      if (events != null) {
+         int i = Arrays.binarySearch(positions, 0, count, k);
+         if (i >= 0 && events[i] != null) {
+            events[i] = null;
+            removedCount = removedCount + 1;
+         }
+      }
+      else if (filter.test(e)) {
+         aggregation.remove(date, principal, description);
+      }
+   }
+
+   /* Renumbers the positions of the events in this view after the collection
+   ** has been compacted (newPositions[k] being the new position of the event
+   ** at position k, or -1 if it was removed), dropping the removed events.
+   */
+   void renumber(int[] newPositions) {
+      if (events != null) {
+         int n = 0;
+         for (int i = 0; i < count; i++) {
+            if (events[i] != null && newPositions[positions[i]] != -1) {
+               events[n] = events[i];
+               positions[n] = newPositions[positions[i]];
+               n = n + 1;
+            }
+         }
+         Arrays.fill(events, n, count, null);
+         count = n;
+         removedCount = 0;
+      }
+   }
+
+}
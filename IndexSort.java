@@ -0,0 +1,151 @@
+import java.util.Arrays;
+
+/* Java class that presents a collection of static methods for computing
+** orderings (i.e., permutations of positions) of a sequence of items, given a
+** primitive sort key for each item.  EventCollection uses these methods to
+** build the orderings over which it iterates.
+**
+** Each key is packed together with its item's position into a single long,
+** so that sorting the packed values orders the items by key and, among items
+** with equal keys, by position.  (The resulting orderings are therefore
+** stable.)  Sequences of at least PARALLEL_THRESHOLD items are sorted with a
+** parallel sort-merge on the common fork-join pool; shorter ones are sorted
+** sequentially, where the cost of splitting the work would dominate.
+*/
+
+public class IndexSort {
+
+   public static final int PARALLEL_THRESHOLD = 1 << 13;
+
+   /* Returns the positions listed in order[0..n-1] (a permutation of 0..n-1,
+   ** or, if order is null, 0..n-1 itself), rearranged into ascending order of
+   ** keys[] (i.e., the result r satisfies keys[r[i]] <= keys[r[i+1]]).  Ties
+   ** are broken by the positions' places in order[], so that sorting by one
+   ** column of keys and then by another orders by the second column first.
+   ** The keys are assumed to be nonnegative.
+   */
+   public static int[] sortedIndices(int[] keys, int[] order, int n) {
+      long[] packed = new long[n];
+      if (n >= PARALLEL_THRESHOLD) {
+         Arrays.parallelSetAll(packed, i -> pack(keys[at(order, i)], i));
+         Arrays.parallelSort(packed);
+      }
+      else {
+         for (int i = 0; i < n; i++) {
+            packed[i] = pack(keys[at(order, i)], i);
+         }
+         Arrays.sort(packed);
+      }
+      return positionsOf(packed, order);
+   }
+
+   /* Returns an array of length n whose i-th element is ranks[ids[i]].
+   ** This converts a column of string ids into a column of sort keys.
+   */
+   public static int[] rankedKeys(int[] ids, int[] ranks, int n) {
+      int[] keys = new int[n];
+      if (n >= PARALLEL_THRESHOLD) {
+         Arrays.parallelSetAll(keys, i -> ranks[ids[i]]);
+      }
+      else {
+         for (int i = 0; i < n; i++) {
+            keys[i] = ranks[ids[i]];
+         }
+      }
+      return keys;
+   }
+
+   /* Merges the orderings a and b (each of which is arranged in ascending
+   ** lexicographic order of the given key columns) into one, in which an
+   ** element of a precedes an element of b having the same keys.
+   */
+   public static int[] merge(int[] a, int[] b, int[][] keys) {
+      int[] result = new int[a.length + b.length];
+      int i = 0;
+      int j = 0;
+      for (int k = 0; k < result.length; k++) {
+         if (j == b.length || (i != a.length && compare(keys, a[i], b[j]) <= 0)) {
+            result[k] = a[i];
+            i = i + 1;
+         }
+         else {
+            result[k] = b[j];
+            j = j + 1;
+         }
+      }
+      return result;
+   }
+
+   /* Returns the array 0, 1, ..., n-1.
+   */
+   public static int[] identity(int n) {
+      return range(0, n);
+   }
+
+   /* Returns the array lo, lo+1, ..., hi-1.
+   */
+   public static int[] range(int lo, int hi) {
+      int[] result = new int[hi - lo];
+      for (int i = 0; i < result.length; i++) {
+         result[i] = lo + i;
+      }
+      return result;
+   }
+
+   /* Returns an array of length n whose i-th element is the complement of
+   ** keys[i] with respect to Integer.MAX_VALUE, so that ascending order of the
+   ** result is descending order of keys[0..n-1].
+   */
+   public static int[] reversedKeys(int[] keys, int n) {
+      int[] result = new int[n];
+      for (int i = 0; i < n; i++) {
+         result[i] = Integer.MAX_VALUE - keys[i];
+      }
+      return result;
+   }
+
+// -------------------------------------------------------------------------------------
+// P r i v a t e   M e t h o d s
+// -------------------------------------------------------------------------------------
+
+   /* Packs a (nonnegative) key and a position into a long that orders first
+   ** by key and then by position.
+   */
+   private static long pack(int key, int position) {
+      return ((long) key << 32) | position;
+   }
+
+   /* Compares the items at positions p and q lexicographically by the given
+   ** key columns, returning a negative, zero or positive result.
+   */
+   private static int compare(int[][] keys, int p, int q) {
+      int result = 0;
+      for (int i = 0; result == 0 && i < keys.length; i++) {
+         result = Integer.compare(keys[i][p], keys[i][q]);
+      }
+      return result;
+   }
+
+   /* Returns the i-th position listed in order (or i, if order is null).
+   */
+   private static int at(int[] order, int i) {
+      return (order == null) ? i : order[i];
+   }
+
+   /* Returns the positions, listed in order (as for at()), at the places held
+   ** in the low-order halves of the given packed values, in the same order.
+   */
+   private static int[] positionsOf(long[] packed, int[] order) {
+      int[] result = new int[packed.length];
+      if (packed.length >= PARALLEL_THRESHOLD) {
+         Arrays.parallelSetAll(result, i -> at(order, (int) packed[i]));
+      }
+      else {
+         for (int i = 0; i < packed.length; i++) {
+            result[i] = at(order, (int) packed[i]);
+         }
+      }
+      return result;
+   }
+
+}
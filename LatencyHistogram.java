@@ -0,0 +1,159 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/** An instance of this class is a histogram of durations (in nanoseconds),
+**  to which any number of threads may add at once.  In the manner of an
+**  HDR histogram, the durations are counted in buckets whose widths grow
+**  with the durations: each power of two is divided into eight buckets, so
+**  a duration is known to within 12.5% (and durations below 16 exactly),
+**  whatever its magnitude, while the histogram takes a fixed, small amount
+**  of space.  Recording a duration costs a few arithmetic operations and a
+**  few increments of LongAdders.  (Every counter, the buckets included, is
+**  a LongAdder, so that threads recording similar durations at once do not
+**  contend for the same few words.)
+*/
+public class LatencyHistogram {
+
+   private static final int SUB_BUCKET_BITS = 3;   // 2^3 buckets per power of two
+   private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+   private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS;
+
+   // instance variables
+   // ------------------
+   private final LongAdder[] counts;       // counts[b] is the # of durations in bucket b
+   private final LongAdder count;          // # of durations recorded
+   private final LongAdder sum;            // their sum
+   private final LongAccumulator max;      // the longest of them
+
+   /** Initializes this histogram to be empty.
+   */
+   public LatencyHistogram() {
+      counts = new LongAdder[BUCKETS];
+      for (int b = 0; b < BUCKETS; b++) {
+         counts[b] = new LongAdder();
+      }
+      count = new LongAdder();
+      sum = new LongAdder();
+      max = new LongAccumulator(Math::max, 0);
+   }
+
+   // observers
+   // ---------
+
+   /** Returns the number of durations recorded.
+   */
+   public long countOf() { return count.sum(); }
+
+   /** Returns the mean of the durations recorded (0 if there are none).
+   */
+   public double meanOf() {
+      long n = count.sum();
+      return (n == 0) ? 0 : (double) sum.sum() / n;
+   }
+
+   /** Returns the longest duration recorded (0 if there are none).
+   */
+   public long maxOf() { return max.get(); }
+
+   /** Returns (to within the width of a bucket, rounding up) the duration
+   **  that the given proportion (from 0 to 1) of the durations recorded do
+   **  not exceed; e.g., percentileOf(0.99) is the 99th percentile.  Returns
+   **  0 if no durations have been recorded.
+   */
+   public long percentileOf(double proportion) {
+      long[] sums = new long[BUCKETS];   // (summed once, so that they agree)
+      long total = 0;
+      for (int b = 0; b < BUCKETS; b++) {
+         sums[b] = counts[b].sum();
+         total = total + sums[b];
+      }
+      long wanted = Math.max(1, (long) Math.ceil(proportion * total));
+      long result = 0;
+      long seen = 0;
+      for (int b = 0; b < BUCKETS && seen < wanted; b++) {
+         seen = seen + sums[b];
+         result = Math.min(highestIn(b), maxOf());
+      }
+      return (total == 0) ? 0 : result;
+   }
+
+   /** Returns a copy of this histogram, i.e., a histogram of the durations
+   **  recorded so far.
+   */
+   public LatencyHistogram copy() {
+      LatencyHistogram result = new LatencyHistogram();
+      for (int b = 0; b < BUCKETS; b++) {
+         result.counts[b].add(counts[b].sum());
+      }
+      result.count.add(count.sum());
+      result.sum.add(sum.sum());
+      result.max.accumulate(max.get());
+      return result;
+   }
+
+   /** Returns a summary of this histogram, e.g.
+   **  "n=1200 mean=350.2 p50=320 p99=1151 max=20480 (ns)".
+   */
+   public String toString() {
+      return String.format("n=%d mean=%.1f p50=%d p99=%d max=%d (ns)",
+                           countOf(), meanOf(), percentileOf(0.5), percentileOf(0.99), maxOf());
+   }
+
+   // mutator
+   // -------
+
+   /** Records the given duration (in nanoseconds; negative durations are
+   **  taken as 0).
+   */
+   public void record(long nanos) {
+      record(nanos, 1);
+   }
+
+   /** Records the given duration (as for record(long)) the given number of
+   **  times.
+   */
+   public void record(long nanos, long times) {
+      long d = Math.max(0, nanos);
+      counts[bucketOf(d)].add(times);
+      count.add(times);
+      sum.add(d * times);
+      max.accumulate(d);
+   }
+
+   // private methods
+   // ---------------
+
+   /* Returns the bucket counting the given (nonnegative) duration.  Below
+   ** 2*SUB_BUCKETS, each duration has a bucket of its own; beyond, the
+   ** bucket is given by the position of the highest 1 bit (the power of
+   ** two) and the SUB_BUCKET_BITS bits that follow it.
+   */
+   private static int bucketOf(long d) {
+      int result;
+      if (d < 2 * SUB_BUCKETS) {
+         result = (int) d;
+      }
+      else {
+         int exponent = 63 - Long.numberOfLeadingZeros(d);
+         int sub = (int) (d >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+         result = ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + sub;
+      }
+      return result;
+   }
+
+   /* Returns the longest duration counted by the given bucket.
+   */
+   private static long highestIn(int b) {
+      long result;
+      if (b < 2 * SUB_BUCKETS) {
+         result = b;
+      }
+      else {
+         int exponent = (b >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+         long lowest = (long) (SUB_BUCKETS + (b & (SUB_BUCKETS - 1))) << (exponent - SUB_BUCKET_BITS);
+         result = lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+      }
+      return result;
+   }
+
+}
@@ -0,0 +1,112 @@
+import java.nio.charset.StandardCharsets;
+
+/** An instance of this class is an event read from a line of a file (see
+**  EventLoader) whose principal and description are not made into strings
+**  until they are first asked for.  The event holds the bytes that were read
+**  (a buffer shared by the events read along with it) and the offsets of
+**  its principal and description within them; only its date, which is
+**  needed to place it in chronological order, is parsed when it is made.
+**  Loading a file only to look at the first few events in chronological
+**  order thus spares the decoding of every other event's strings.  (Until
+**  both of its strings are decoded, a lazy event keeps the whole buffer
+**  alive; once they are, it lets go of the buffer.)
+**
+**  The bytes are decoded as UTF-8, and each occurrence of Event.REPLACEMENT
+**  is replaced by Event.DELIMITER, as by the Event(String) constructor.
+**  Like any event, a lazy event is immutable: the strings it yields do not
+**  depend upon when they are first asked for, and (strings being immutable)
+**  it is harmless if two threads happen to decode the same one at once.
+**  (The strings and the buffer are volatile, so that a thread finding the
+**  buffer gone also finds both strings.)
+*/
+public class LazyEvent extends Event {
+
+   // instance variables
+   // ------------------
+   // buffer[principalFrom..principalTo-1] holds the principal, and
+   // buffer[descriptionFrom..descriptionTo-1] the description
+   private volatile byte[] buffer;   // the bytes read (shared with other events),
+                                     // until both strings are decoded (null after)
+   private final int principalFrom;
+   private final int principalTo;
+   private final int descriptionFrom;
+   private final int descriptionTo;
+
+   private volatile String principal;     // the principal, once decoded (null before)
+   private volatile String description;   // the description, once decoded (null before)
+
+
+   // constructor
+   // -----------
+
+   /** Initializes this event to have the specified date, and the principal
+   **  and description given by the specified ranges of bytes of the buffer
+   **  (each from an offset up to, but not including, another).  The buffer
+   **  must not be changed afterwards.
+   */
+   public LazyEvent(CalendarDate theDate, byte[] buffer, int principalFrom, int principalTo,
+                    int descriptionFrom, int descriptionTo) {
+      super(theDate, null, null);
+      this.buffer = buffer;
+      this.principalFrom = principalFrom;
+      this.principalTo = principalTo;
+      this.descriptionFrom = descriptionFrom;
+      this.descriptionTo = descriptionTo;
+   }
+
+   // observers
+   // ---------
+
+   /** Returns the principal of this event, decoding it upon the first call.
+   */
+   public String principalOf() {
+      String result = principal;
+      if (result == null) {
+         byte[] bytes = buffer;
+         result = (bytes == null) ? principal : decode(bytes, principalFrom, principalTo);
+         principal = result;
+         releaseIfDecoded();
+      }
+      return result;
+   }
+
+   /** Returns the description of this event, decoding it upon the first call.
+   */
+   public String descriptionOf() {
+      String result = description;
+      if (result == null) {
+         byte[] bytes = buffer;
+         result = (bytes == null) ? description : decode(bytes, descriptionFrom, descriptionTo);
+         description = result;
+         releaseIfDecoded();
+      }
+      return result;
+   }
+
+   /** Returns true if and only if both the principal and the description of
+   **  this event have been decoded.
+   */
+   public boolean isDecoded() {
+      return principal != null && description != null;
+   }
+
+   // private methods
+   // ---------------
+
+   /* Returns the string described by bytes[from..to-1], with the delimiter
+   ** restored wherever it had been replaced.
+   */
+   private static String decode(byte[] bytes, int from, int to) {
+      return new String(bytes, from, to - from, StandardCharsets.UTF_8)
+                .replace(Event.REPLACEMENT, Event.DELIMITER);
+   }
+
+   /* Lets go of the buffer if both strings have been decoded.
+   */
+   private void releaseIfDecoded() {
+      if (principal != null && description != null) {
+         buffer = null;
+      }
+   }
+
+}
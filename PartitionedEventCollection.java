@@ -0,0 +1,414 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PrimitiveIterator;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/** An instance of this class is a collection of events divided, according
+**  to the years in which they occurred, into partitions, each of which is an
+**  EventCollection of its own.  Depending upon the partitioning chosen at
+**  creation, there is one partition per year (PARTITION_BY_YEAR) or per
+**  decade (PARTITION_BY_DECADE) in which any event occurred.
+**
+**  As most queries concern a narrow period, the partitions are kept in order
+**  of their years, and a query confined to a range of dates (between()) only
+**  consults the partitions overlapping that range.  Likewise, iterating over
+**  the events in chronological order (or in any order whose first key is the
+**  date) amounts to iterating over the partitions one after another, each in
+**  that order, so that no ordering spanning the whole collection is ever
+**  built.  An iteration in an order led by any other key (including the
+**  order of insertion) merges the partitions' orderings (see
+**  EventMergeSpliterator).  The events are numbered in order of insertion
+**  across all of the partitions, and the merge breaks ties by these
+**  numbers, so every order means just what it means for an EventCollection.
+**
+**  A partition that is not wanted for the time being can be evicted, i.e.,
+**  written to a file (in the form read by the Event(String) constructor, one
+**  event per line) and discarded, and can later be loaded back.  An evicted
+**  partition is also loaded automatically when an event is inserted into it
+**  or removed from it, or when a query needs it.
+**
+**  Each partition grows as needed, so a partitioned collection has no fixed
+**  capacity.  Duplicates (see EventCollection) are handled within each
+**  partition; as duplicate events have equal dates, they always fall into
+**  the same partition.
+*/
+public class PartitionedEventCollection {
+
+   // class constants (for partitionings)
+   // -----------------------------------
+   public static final int PARTITION_BY_YEAR = 0;
+   public static final int PARTITION_BY_DECADE = 1;
+
+
+   // class constant (for initial partition capacity)
+   // -----------------------------------------------
+   private static final int DEFAULT_PARTITION_CAPACITY = 16;
+
+
+   // instance variables
+   // ------------------
+   private final int partitioning;    // PARTITION_BY_YEAR or PARTITION_BY_DECADE
+   private final int duplicatesMode;  // one of EventCollection's DUPLICATES_ constants
+
+   private final TreeMap<Integer,Partition> partitions;  // maps each key (the
+                                      // year or decade number) to its partition
+
+   private long inserted;             // # of events inserted (each of which is
+                                      // given the number of those before it)
+
+   private Iterator<Event> iteration; // the active iteration (null if inactive)
+
+
+   // constructors
+   // ------------
+
+   /** Initializes this collection to be empty and to be partitioned as
+   **  specified (by PARTITION_BY_YEAR or PARTITION_BY_DECADE).
+   */
+   public PartitionedEventCollection(int partitioning) {
+      this(partitioning, EventCollection.DUPLICATES_ALLOWED);
+   }
+
+   /** Initializes this collection to be empty, to be partitioned as specified,
+   **  and to treat duplicate events according to the specified duplicates
+   **  mode (one of the constants of EventCollection).
+   */
+   public PartitionedEventCollection(int partitioning, int duplicatesMode) {
+      if (partitioning != PARTITION_BY_YEAR && partitioning != PARTITION_BY_DECADE) {
+         throw new IllegalArgumentException("Illegal partitioning value");
+      }
+      if (duplicatesMode < EventCollection.DUPLICATES_ALLOWED ||
+          duplicatesMode > EventCollection.DUPLICATES_REJECTED) {
+         throw new IllegalArgumentException("Illegal duplicates mode value");
+      }
+      this.partitioning = partitioning;
+      this.duplicatesMode = duplicatesMode;
+      partitions = new TreeMap<Integer,Partition>();
+      inserted = 0;
+      iteration = null;
+   }
+
+   // observers
+   // ---------
+
+   /** Returns the number of events in the collection (including those in
+   **  evicted partitions).
+   */
+   public int sizeOf() {
+      int result = 0;
+      for (Partition p : partitions.values()) {
+         result = result + p.sizeOf();
+      }
+      return result;
+   }
+
+   /** Returns the way in which this collection is partitioned.
+   */
+   public int partitioningOf() { return partitioning; }
+
+   /** Returns the keys of the partitions (i.e., the year numbers or decade
+   **  numbers, e.g. 196 for the 1960s), in ascending order.
+   */
+   public int[] partitionKeys() {
+      int[] result = new int[partitions.size()];
+      int i = 0;
+      for (int key : partitions.keySet()) {
+         result[i] = key;
+         i = i + 1;
+      }
+      return result;
+   }
+
+   /** Returns the key of the partition to which an event having the given
+   **  date belongs.
+   */
+   public int partitionKeyOf(CalendarDate date) {
+      return (partitioning == PARTITION_BY_YEAR) ? date.getYear() : date.getYear() / 10;
+   }
+
+   /** Returns the number of events in the partition having the given key
+   **  (zero if there is no such partition).
+   */
+   public int partitionSizeOf(int key) {
+      Partition p = partitions.get(key);
+      return (p == null) ? 0 : p.sizeOf();
+   }
+
+   /** Returns true if and only if the partition having the given key exists
+   **  and has not been evicted.
+   */
+   public boolean isLoaded(int key) {
+      Partition p = partitions.get(key);
+      return p != null && p.events != null;
+   }
+
+   // mutators
+   // --------
+
+   /** Inserts the given event into the partition to which it belongs (which
+   **  is created, or loaded, if need be).  As for EventCollection.insert(),
+   **  a duplicate may be ignored or rejected.
+   */
+   public void insert(Event e) {
+      int key = partitionKeyOf(e.dateOf());
+      Partition p = partitions.get(key);
+      if (p == null) {
+         p = new Partition(new EventCollection(DEFAULT_PARTITION_CAPACITY, duplicatesMode));
+         partitions.put(key, p);
+      }
+      insert(loaded(key, p), e, inserted);
+      inserted = inserted + 1;
+   }
+
+   /** Inserts the given events into this collection, in order.
+   */
+   public void insertAll(Iterable<? extends Event> es) {
+      for (Event e : es) {
+         insert(e);
+      }
+   }
+
+   /** Removes from this collection an event having the same date, principal
+   **  and description as the given event (see EventCollection.remove()),
+   **  returning true, or, if there is no such event, returns false.
+   */
+   public boolean remove(Event e) {
+      int key = partitionKeyOf(e.dateOf());
+      Partition p = partitions.get(key);
+      return p != null && loaded(key, p).remove(e);
+   }
+
+   /** Writes the events of the partition having the given key to the given
+   **  file, one per line, in order of insertion, and then discards them from
+   **  memory.  The partition is loaded back (from the same file) by load(),
+   **  or whenever it is next needed.  (If the partition does not exist, or
+   **  has already been evicted, nothing happens.)
+   */
+   public void evict(int key, File file) throws IOException {
+      Partition p = partitions.get(key);
+      if (p != null && p.events != null) {
+         EventCollection.Snapshot s = p.events.snapshot();
+         BufferedWriter out = new BufferedWriter(new FileWriter(file));
+         try {
+            Iterator<Event> it = s.stream(EventOrder.BY_INSERTION).iterator();
+            while (it.hasNext()) {
+               out.write(it.next().toString());
+               out.newLine();
+            }
+         }
+         finally {
+            out.close();
+         }
+         p.size = p.events.sizeOf();
+         p.sequences = s.sequences(EventOrder.BY_INSERTION).toArray();
+         p.file = file;
+         p.events = null;
+      }
+   }
+
+   /** Loads the (evicted) partition having the given key back into memory
+   **  from the file to which it was written.  (If the partition does not
+   **  exist, or is already loaded, nothing happens.)
+   */
+   public void load(int key) throws IOException {
+      Partition p = partitions.get(key);
+      if (p != null && p.events == null) {
+         EventCollection events =
+            new EventCollection(Math.max(DEFAULT_PARTITION_CAPACITY, p.size), duplicatesMode);
+         BufferedReader in = new BufferedReader(new FileReader(p.file));
+         try {
+            String line = in.readLine();
+            for (int i = 0; line != null; i++) {
+               insert(events, new Event(line), p.sequences[i]);
+               line = in.readLine();
+            }
+         }
+         finally {
+            in.close();
+         }
+         p.events = events;
+         p.sequences = null;
+         p.file = null;
+      }
+   }
+
+   // iteration-related methods
+   // -------------------------
+
+   /** Resets iteration to begin afresh, using the default iteration mode.
+   */
+   public void reset() {
+      reset(EventCollection.ITERATE_BY_INSERTION);
+   }
+
+   /** Resets iteration to begin afresh, with the parameter specifying the
+   **  iteration mode (one of the constants of EventCollection).  The
+   **  iteration covers exactly those events in the collection at the time
+   **  of the call.
+   */
+   public void reset(int iterMode) {
+      reset(EventCollection.orderOf(iterMode));
+   }
+
+   /** Resets iteration to begin afresh, with the events in the specified
+   **  order.
+   */
+   public void reset(EventOrder order) {
+      iteration = stream(order).iterator();
+   }
+
+   /** Returns true if and only if there is an active iteration that has
+   **  at least one more element to iterate over.
+   */
+   public boolean hasNext() {
+      return iteration != null && iteration.hasNext();
+   }
+
+   /** Returns the next event in the iteration.
+   **  pre-condition: hasNext()
+   */
+   public Event next() {
+      return iteration.next();
+   }
+
+   /** Returns a stream of the events in this collection, in the order given
+   **  by the specified iteration mode.
+   */
+   public Stream<Event> stream(int iterMode) {
+      return stream(EventCollection.orderOf(iterMode));
+   }
+
+   /** Returns a stream of the events in this collection, in the specified
+   **  order (see above for orders led by the order of insertion).  The
+   **  stream covers the events in the collection at the time of the call.
+   */
+   public Stream<Event> stream(EventOrder order) {
+      NavigableMap<Integer,Partition> range =
+         order.isDescendingAt(0) ? partitions.descendingMap() : partitions;
+      return streamOf(range, order);
+   }
+
+   /** Returns a stream of the events in this collection whose dates are
+   **  neither earlier than from nor later than to, in chronological order.
+   **  Only the partitions overlapping that range of dates are consulted.
+   */
+   public Stream<Event> between(CalendarDate from, CalendarDate to) {
+      int lo = partitionKeyOf(from);
+      int hi = partitionKeyOf(to);
+      List<Stream<Event>> parts = new ArrayList<Stream<Event>>();
+      if (lo <= hi) {
+         for (Map.Entry<Integer,Partition> entry : partitions.subMap(lo, true, hi, true).entrySet()) {
+            parts.add(loaded(entry.getKey(), entry.getValue()).between(from, to));
+         }
+      }
+      return parts.stream().flatMap(s -> s);
+   }
+
+   /** Returns a stream of the events in the partitions having keys from lo
+   **  to hi (inclusive), in the specified order.
+   */
+   public Stream<Event> streamOfPartitions(int lo, int hi, EventOrder order) {
+      NavigableMap<Integer,Partition> range = (lo <= hi) ? partitions.subMap(lo, true, hi, true)
+                                                         : new TreeMap<Integer,Partition>();
+      return streamOf(order.isDescendingAt(0) ? range.descendingMap() : range, order);
+   }
+
+   // private methods
+   // ---------------
+
+   /* Returns a stream of the events in the given partitions, in the specified
+   ** order.  If the order is led by the date, the partitions' streams are
+   ** concatenated (the partitions being given in the direction of the date);
+   ** as events of equal dates are in the same partition, that partition's
+   ** ordering settles the order among them.  Otherwise the streams are
+   ** merged, ties being broken by the events' sequence numbers.
+   */
+   private Stream<Event> streamOf(NavigableMap<Integer,Partition> range, EventOrder order) {
+      List<Stream<Event>> parts = new ArrayList<Stream<Event>>();
+      List<PrimitiveIterator.OfLong> numbers = new ArrayList<PrimitiveIterator.OfLong>();
+      boolean merging = (order.fieldAt(0) != EventOrder.DATE);
+      long size = 0;
+      for (Map.Entry<Integer,Partition> entry : range.entrySet()) {
+         EventCollection.Snapshot s = loaded(entry.getKey(), entry.getValue()).snapshot();
+         parts.add(s.stream(order));
+         if (merging) {
+            numbers.add(s.sequences(order).iterator());
+         }
+         size = size + s.sizeOf();
+      }
+      Stream<Event> result;
+      if (!merging) {
+         result = parts.stream().flatMap(s -> s);
+      }
+      else {
+         List<Iterator<Event>> sources = new ArrayList<Iterator<Event>>();
+         for (Stream<Event> s : parts) {
+            sources.add(s.iterator());
+         }
+         result = StreamSupport.stream(new EventMergeSpliterator(
+            sources, numbers, order.comparator(), order.isLatestInsertedFirst(), size), false);
+      }
+      return result;
+   }
+
+   /* Returns the events of the given partition (having the given key),
+   ** loading them first if the partition has been evicted.
+   */
+   private EventCollection loaded(int key, Partition p) {
+      if (p.events == null) {
+         try {
+            load(key);
+         }
+         catch (IOException e) {
+            throw new UncheckedIOException("cannot load partition " + key, e);
+         }
+      }
+      return p.events;
+   }
+
+   /* Inserts the given event into the given partition's collection, with
+   ** the given sequence number, first doubling its capacity if it is full.
+   */
+   private static void insert(EventCollection events, Event e, long sequence) {
+      if (events.sizeOf() == events.capacityOf()) {
+         events.ensureCapacity(2 * events.capacityOf());
+      }
+      events.insert(e, sequence);
+   }
+
+   // nested class
+   // ------------
+
+   /* An instance of this class is one partition: either its events (when
+   ** loaded) or the file to which they were written, their number and their
+   ** sequence numbers (when evicted).
+   */
+   private static class Partition {
+      private EventCollection events;  // the events (null if evicted)
+      private File file;               // where they were written (if evicted)
+      private int size;                // # of events (if evicted)
+      private long[] sequences;        // their sequence numbers, in order of
+                                       // insertion (if evicted)
+
+      private Partition(EventCollection events) {
+         this.events = events;
+      }
+
+      private int sizeOf() {
+         return (events == null) ? size : events.sizeOf();
+      }
+   }
+
+}
@@ -0,0 +1,404 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/** An instance of this class is a collection of events spread over a fixed
+**  number of shards, each of which is an EventCollection of its own, so that
+**  several threads can insert events at once.  An event is routed to a shard
+**  by the hash of its principal.
+**
+**  Each shard is owned by a single thread (an executor of its own), which
+**  performs every operation upon the shard.  The shards therefore need no
+**  locking, and inserting threads merely hand events to the owning threads.
+**  insert() and insertAll() return as soon as the events have been handed
+**  over; flush() waits until every event handed over so far has been
+**  inserted.  An insertion made by a thread is visible to the queries that
+**  the same thread makes afterwards, but (unless it has called flush())
+**  perhaps not to those made by other threads.  Each event is numbered as it
+**  is handed over, so the order of insertion is the order in which the
+**  events were handed over (by whichever threads).
+**
+**  The numbers are drawn from a single AtomicLong, and each shard has a lock
+**  of its own, held only while events are numbered and handed to it, so
+**  that every shard receives its events in increasing order of number (as
+**  the merge described below requires).  Threads inserting into different
+**  shards thus do not wait for one another; insertAll() holds the locks of
+**  just the shards that its batch touches (taking them in ascending order),
+**  so that the batch's events are numbered in the order given.
+**
+**  A query is made up of one task per shard, performed by the shard's
+**  thread, that takes a snapshot of the shard and (if need be) brings the
+**  shard's ordering for the query up to date; the shards' orderings are then
+**  combined by the querying thread by means of a k-way merge (see
+**  EventMergeSpliterator), which breaks ties by the events' numbers.  Every
+**  order (including the order of insertion) thus means just what it means
+**  for an EventCollection.
+**
+**  Shards grow as needed, so a sharded collection has no fixed capacity.  As
+**  insertions are carried out after insert() has returned, a duplicate event
+**  cannot be reported to the inserting thread, so DUPLICATES_REJECTED is not
+**  supported; duplicates can be ignored, however, as equal events have equal
+**  principals and thus fall into the same shard.
+**
+**  The shards' threads are daemon threads, and are stopped by close().
+*/
+public class ShardedEventCollection implements AutoCloseable {
+
+   // class constant (for initial shard capacity)
+   // -------------------------------------------
+   private static final int DEFAULT_SHARD_CAPACITY = 1024;
+
+
+   // instance variables
+   // ------------------
+   private final EventCollection[] shards;   // the shards, each of which is
+   private final ExecutorService[] owners;   // touched only by the thread of
+                                             // the corresponding owner
+
+   private final ReentrantLock[] handOvers;  // handOvers[i] is held while
+                                             // events are numbered and handed
+                                             // to shard i
+   private final AtomicLong inserted;  // # of events numbered (each of which is
+                                       // given the number of those before it)
+
+   private Iterator<Event> iteration; // the active iteration (null if inactive)
+
+
+   // constructors
+   // ------------
+
+   /** Initializes this collection to be empty and to consist of the specified
+   **  number of shards.
+   */
+   public ShardedEventCollection(int shardCount) {
+      this(shardCount, EventCollection.DUPLICATES_ALLOWED);
+   }
+
+   /** Initializes this collection to be empty, to consist of the specified
+   **  number of shards, and to treat duplicate events according to the
+   **  specified duplicates mode (DUPLICATES_ALLOWED or DUPLICATES_IGNORED).
+   */
+   public ShardedEventCollection(int shardCount, int duplicatesMode) {
+      if (shardCount < 1) {
+         throw new IllegalArgumentException("Illegal shard count");
+      }
+      if (duplicatesMode != EventCollection.DUPLICATES_ALLOWED &&
+          duplicatesMode != EventCollection.DUPLICATES_IGNORED) {
+         throw new IllegalArgumentException("Illegal duplicates mode value");
+      }
+      shards = new EventCollection[shardCount];
+      owners = new ExecutorService[shardCount];
+      handOvers = new ReentrantLock[shardCount];
+      for (int i = 0; i < shardCount; i++) {
+         String name = "event-shard-" + i;
+         shards[i] = new EventCollection(DEFAULT_SHARD_CAPACITY, duplicatesMode);
+         handOvers[i] = new ReentrantLock();
+         owners[i] = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+         });
+      }
+      inserted = new AtomicLong();
+      iteration = null;
+   }
+
+   // observers
+   // ---------
+
+   /** Returns the number of shards making up this collection.
+   */
+   public int shardCountOf() { return shards.length; }
+
+   /** Returns the number of the shard to which an event having the given
+   **  principal is routed.
+   */
+   public int shardOf(String principal) {
+      int h = principal.hashCode();
+      return Math.floorMod(h ^ (h >>> 16), shards.length);
+   }
+
+   /** Returns the number of events in this collection.
+   */
+   public int sizeOf() {
+      int result = 0;
+      for (int size : onEachShard(shard -> shard.sizeOf())) {
+         result = result + size;
+      }
+      return result;
+   }
+
+   /** Returns the number of duplicate events that were ignored.
+   */
+   public int duplicateCountOf() {
+      int result = 0;
+      for (int count : onEachShard(shard -> shard.duplicateCountOf())) {
+         result = result + count;
+      }
+      return result;
+   }
+
+   // mutators
+   // --------
+
+   /** Hands the given event over to be inserted into its shard, returning
+   **  without waiting for the insertion to be made.
+   */
+   public void insert(Event e) {
+      int i = shardOf(e.principalOf());
+      EventCollection shard = shards[i];
+      handOvers[i].lock();
+      try {
+         long sequence = inserted.getAndIncrement();
+         owners[i].execute(() -> insert(shard, e, sequence));
+      }
+      finally {
+         handOvers[i].unlock();
+      }
+   }
+
+   /** Hands the given events over to be inserted into their shards (in order,
+   **  within each shard), returning without waiting for the insertions to be
+   **  made.  The events are handed to each shard in a single batch, which is
+   **  inserted by way of EventCollection.insertAll().
+   */
+   public void insertAll(Collection<? extends Event> es) {
+      int[] shardOf = new int[es.size()];   // shardOf[j] is the shard of the j-th event
+      int[] counts = new int[shards.length];
+      int j = 0;
+      for (Event e : es) {
+         shardOf[j] = shardOf(e.principalOf());
+         counts[shardOf[j]] = counts[shardOf[j]] + 1;
+         j = j + 1;
+      }
+      List<List<Event>> batches = new ArrayList<List<Event>>();
+      long[][] sequences = new long[shards.length][];
+      for (int i = 0; i < shards.length; i++) {
+         batches.add(new ArrayList<Event>(counts[i]));
+         sequences[i] = new long[counts[i]];
+      }
+      for (int i = 0; i < shards.length; i++) {
+         if (counts[i] != 0) {
+            handOvers[i].lock();
+         }
+      }
+      try {
+         long first = inserted.getAndAdd(es.size());
+         j = 0;
+         for (Event e : es) {
+            int i = shardOf[j];
+            sequences[i][batches.get(i).size()] = first + j;
+            batches.get(i).add(e);
+            j = j + 1;
+         }
+         for (int i = 0; i < shards.length; i++) {
+            EventCollection shard = shards[i];
+            List<Event> batch = batches.get(i);
+            long[] numbers = sequences[i];
+            if (!batch.isEmpty()) {
+               owners[i].execute(() -> {
+                  shard.ensureCapacity(shard.sizeOf() + batch.size());
+                  shard.insertAll(batch, numbers);
+               });
+            }
+         }
+      }
+      finally {
+         for (int i = shards.length - 1; i >= 0; i--) {
+            if (counts[i] != 0) {
+               handOvers[i].unlock();
+            }
+         }
+      }
+   }
+
+   /** Waits until every event handed over (by any thread) before the call
+   **  has been inserted into its shard.
+   */
+   public void flush() {
+      onEachShard(shard -> null);
+   }
+
+   /** Removes from this collection an event having the same date, principal
+   **  and description as the given event (see EventCollection.remove()),
+   **  returning true, or, if there is no such event, returns false.  Unlike
+   **  insert(), this waits for the shard to carry out the removal.
+   */
+   public boolean remove(Event e) {
+      int i = shardOf(e.principalOf());
+      EventCollection shard = shards[i];
+      return await(owners[i].submit(() -> shard.remove(e)));
+   }
+
+   /** Stops the shards' threads, once they have carried out the operations
+   **  already handed to them.  The collection can no longer be used.
+   */
+   public void close() {
+      for (ExecutorService owner : owners) {
+         owner.shutdown();
+      }
+   }
+
+   // iteration-related methods
+   // -------------------------
+
+   /** Resets iteration to begin afresh, using the default iteration mode.
+   */
+   public void reset() {
+      reset(EventCollection.ITERATE_BY_INSERTION);
+   }
+
+   /** Resets iteration to begin afresh, with the parameter specifying the
+   **  iteration mode (one of the constants of EventCollection).
+   */
+   public void reset(int iterMode) {
+      reset(EventCollection.orderOf(iterMode));
+   }
+
+   /** Resets iteration to begin afresh, with the events in the specified
+   **  order.  (Only one thread at a time should iterate in this way; other
+   **  threads can use stream().)
+   */
+   public void reset(EventOrder order) {
+      iteration = stream(order).iterator();
+   }
+
+   /** Returns true if and only if there is an active iteration that has
+   **  at least one more element to iterate over.
+   */
+   public boolean hasNext() {
+      return iteration != null && iteration.hasNext();
+   }
+
+   /** Returns the next event in the iteration.
+   **  pre-condition: hasNext()
+   */
+   public Event next() {
+      return iteration.next();
+   }
+
+   /** Returns a stream of the events in this collection, in the order given
+   **  by the specified iteration mode.
+   */
+   public Stream<Event> stream(int iterMode) {
+      return stream(EventCollection.orderOf(iterMode));
+   }
+
+   /** Returns a stream of the events in this collection, in the specified
+   **  order (see above for orders led by the order of insertion).  The
+   **  stream covers the events in the shards when their threads took their
+   **  snapshots.
+   */
+   public Stream<Event> stream(EventOrder order) {
+      return merged(onEachShard(shard -> {
+         EventCollection.Snapshot s = shard.snapshot();
+         return new Part(s.stream(order), s.sequences(order).iterator());
+      }), order);
+   }
+
+   /** Returns a stream of the events in this collection whose dates are
+   **  neither earlier than from nor later than to, in chronological order.
+   */
+   public Stream<Event> between(CalendarDate from, CalendarDate to) {
+      return merged(onEachShard(shard -> {
+         EventCollection.Snapshot s = shard.snapshot();
+         return new Part(s.between(from, to), s.sequencesBetween(from, to).iterator());
+      }), EventOrder.BY_DATE);
+   }
+
+   // private methods
+   // ---------------
+
+   /* Returns the stream obtained by merging the given parts (one per shard,
+   ** each in the specified order), ties being broken by the events' numbers.
+   */
+   private Stream<Event> merged(List<Part> parts, EventOrder order) {
+      List<Iterator<Event>> sources = new ArrayList<Iterator<Event>>();
+      List<PrimitiveIterator.OfLong> numbers = new ArrayList<PrimitiveIterator.OfLong>();
+      for (Part p : parts) {
+         sources.add(p.events.iterator());
+         numbers.add(p.sequences);
+      }
+      return StreamSupport.stream(new EventMergeSpliterator(
+         sources, numbers, order.comparator(), order.isLatestInsertedFirst(), Long.MAX_VALUE), false);
+   }
+
+   /* Has each shard's thread apply the given task to the shard, and returns
+   ** the results, in order of shard, once all of them are available.  The
+   ** tasks are handed over to all of the threads before any is waited for,
+   ** so that they proceed in parallel.
+   */
+   private <T> List<T> onEachShard(ShardTask<T> task) {
+      List<Future<T>> futures = new ArrayList<Future<T>>();
+      for (int i = 0; i < shards.length; i++) {
+         EventCollection shard = shards[i];
+         futures.add(owners[i].submit((Callable<T>) () -> task.apply(shard)));
+      }
+      List<T> result = new ArrayList<T>();
+      for (Future<T> f : futures) {
+         result.add(await(f));
+      }
+      return result;
+   }
+
+   /* Waits for the given task to be performed and returns its result,
+   ** rethrowing any exception that it threw.
+   */
+   private static <T> T await(Future<T> f) {
+      try {
+         return f.get();
+      }
+      catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         }
+         throw new IllegalStateException("shard operation failed", cause);
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("interrupted while waiting for a shard", e);
+      }
+   }
+
+   /* Inserts the given event into the given shard, with the given sequence
+   ** number, first doubling its capacity if it is full.
+   */
+   private static void insert(EventCollection shard, Event e, long sequence) {
+      if (shard.sizeOf() == shard.capacityOf()) {
+         shard.ensureCapacity(2 * shard.capacityOf());
+      }
+      shard.insert(e, sequence);
+   }
+
+   /* A task to be applied to a shard by the shard's thread.
+   */
+   private interface ShardTask<T> {
+      T apply(EventCollection shard);
+   }
+
+   /* An instance of this class is one shard's part of the result of a query:
+   ** a stream of events and, one for one, their sequence numbers.
+   */
+   private static class Part {
+      private final Stream<Event> events;
+      private final PrimitiveIterator.OfLong sequences;
+
+      private Part(Stream<Event> events, PrimitiveIterator.OfLong sequences) {
+         this.events = events;
+         this.sequences = sequences;
+      }
+   }
+
+}
@@ -0,0 +1,327 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/* An instance of this Java class is a dictionary of distinct strings, each of
+** which is assigned a small integer id (0, 1, 2, ...) in the order in which
+** the strings are first added.  EventCollection keeps one such dictionary for
+** principals and one for descriptions, so that each event can record its
+** principal and description as ids in primitive int columns.
+**
+** The dictionary can also rank its strings, i.e., report the position that
+** each string occupies in alphabetical order.  Comparing two ranks gives the
+** same answer as comparing the corresponding strings with compareTo(), so an
+** ordering by principal or description can be computed by sorting ints.
+**
+** Finally, the dictionary serves as a hash index: along with each string it
+** keeps a posting list, i.e., the ascending list of positions (within the
+** EventCollection) of the events carrying that string.  Looking up a string
+** thus yields all of its events in O(1 + k) time.
+**
+** Partial strings can be looked up, too.  The strings having a given prefix
+** occupy a contiguous stretch of the alphabetical order, found by binary
+** search.  For substrings, the dictionary keeps a trigram index, mapping
+** each three-character sequence to the ids of the strings containing it;
+** the candidates for a substring are then those listed under the rarest of
+** its trigrams, each of which is checked with String.contains().  (A
+** substring of fewer than three characters has no trigram, so every string
+** is checked for it.)  Both kinds of search are case-sensitive.
+**
+** The alphabetical order is kept up to date as strings are added: only the
+** strings added since it was last needed are sorted, and they are merged
+** into it, so a prefix search during a stream of new strings costs time
+** linear in the size of the dictionary rather than a sort of all of it.
+*/
+
+public class StringIndex {
+
+   private static final int DEFAULT_CAPACITY = 16;
+
+   // instance variables
+   private HashMap<String,Integer> idOf;  // maps each string to its id
+   private String[] strings;              // strings[id] is the string with that id
+   private int count;                     // # of distinct strings (ids 0..count-1)
+
+   private int[][] postings;      // postings[id][0..postingCounts[id]-1] are the
+   private int[] postingCounts;   // positions added with strings[id], ascending
+
+   private String[] sorted;  // the strings in alphabetical order, and ...
+   private int[] sortedIds;  // ... sortedIds[r] is the id of sorted[r]; both
+                             // cover the strings with ids 0..sorted.length-1
+   private int[] ranks;      // ranks[id] is the position of strings[id] in
+                             // sorted[]; null or covering count strings
+
+   private Map<Long,IdList> trigrams;  // maps each (packed) trigram to the ids
+                                       // of the strings containing it
+
+// -------------------------------------------------------------------------------------
+// C o n s t r u c t o r    M e t h o d s
+// -------------------------------------------------------------------------------------
+
+   /** Initializes this dictionary to be empty.
+   */
+   public StringIndex() {
+      idOf = new HashMap<String,Integer>();
+      strings = new String[DEFAULT_CAPACITY];
+      count = 0;
+      postings = new int[DEFAULT_CAPACITY][];
+      postingCounts = new int[DEFAULT_CAPACITY];
+      sorted = new String[0];
+      sortedIds = new int[0];
+      trigrams = new HashMap<Long,IdList>();
+   }
+
+// -------------------------------------------------------------------------------------
+// O b s e r v e r   M e t h o d s
+// -------------------------------------------------------------------------------------
+
+   /** Returns the number of distinct strings in this dictionary.
+   */
+   public int sizeOf() { return count; }
+
+   /** Returns the id of the given string, or -1 if it is not in this dictionary.
+   */
+   public int find(String s) {
+      Integer id = idOf.get(s);
+      return (id == null) ? -1 : id;
+   }
+
+   /** Returns the string having the given id.
+   */
+   public String stringOf(int id) { return strings[id]; }
+
+   /** Returns the posting list of the string having the given id: the
+   **  positions added with that string are found, in ascending order, in
+   **  elements 0..postingCountOf(id)-1 of the result.  The caller must not
+   **  modify the array, which is shared with this dictionary.
+   */
+   public int[] postingsOf(int id) { return postings[id]; }
+
+   /** Returns the length of the posting list of the string having the given id.
+   */
+   public int postingCountOf(int id) { return postingCounts[id]; }
+
+   /** Returns the ids of the strings in this dictionary that begin with the
+   **  given prefix, in alphabetical order of the strings.
+   */
+   public int[] idsWithPrefix(String prefix) {
+      sortNew();
+      int lo = firstSortedFrom(0, r -> sorted[r].compareTo(prefix) >= 0);
+      int hi = firstSortedFrom(lo, r -> !sorted[r].startsWith(prefix));
+      return Arrays.copyOfRange(sortedIds, lo, hi);
+   }
+
+   /** Returns the ids of the strings in this dictionary that contain the given
+   **  string, in ascending order.  A string of fewer than three characters is
+   **  looked for in every string of the dictionary.
+   */
+   public int[] idsContaining(String part) {
+      int[] candidates;
+      int n;
+      if (part.length() < 3) {   // no trigram to go by; try every string
+         candidates = null;
+         n = count;
+      }
+      else {
+         IdList rarest = null;
+         for (int i = 0; i + 3 <= part.length() && (rarest == null || rarest.count != 0); i++) {
+            IdList list = trigrams.get(trigramAt(part, i));
+            if (list == null) {
+               list = new IdList();
+            }
+            if (rarest == null || list.count < rarest.count) {
+               rarest = list;
+            }
+         }
+         candidates = rarest.ids;
+         n = rarest.count;
+      }
+      int[] result = new int[n];
+      int k = 0;
+      for (int i = 0; i < n; i++) {
+         int id = (candidates == null) ? i : candidates[i];
+         if (strings[id].contains(part)) {
+            result[k] = id;
+            k = k + 1;
+         }
+      }
+      return Arrays.copyOf(result, k);
+   }
+
+   /** Returns an array r such that r[id] is the alphabetical rank of the string
+   **  with that id among all of the strings in this dictionary.  The array is
+   **  computed only when strings have been added since the previous call (in
+   **  time linear in the size of the dictionary, besides sorting the strings
+   **  added); the caller must not modify it.
+   */
+   public int[] ranks() {
+      if (ranks == null || ranks.length != count) {
+         sortNew();
+         int[] r = new int[count];
+         for (int i = 0; i < count; i++) {
+            r[sortedIds[i]] = i;
+         }
+         ranks = r;
+      }
+      return ranks;
+   }
+
+// -------------------------------------------------------------------------------------
+// M u t a t o r   M e t h o d s
+// -------------------------------------------------------------------------------------
+
+   /** Returns the id of the given string, first adding it to this dictionary
+   **  if it is not already there, and appends the given position (which must
+   **  exceed every position previously added) to its posting list.
+   */
+   public int add(String s, int position) {
+      Integer id = idOf.get(s);
+      if (id == null) {
+         if (count == strings.length) {
+            strings = Arrays.copyOf(strings, 2 * count);
+            postings = Arrays.copyOf(postings, 2 * count);
+            postingCounts = Arrays.copyOf(postingCounts, 2 * count);
+         }
+         id = count;
+         strings[count] = s;
+         postings[count] = new int[2];
+         count = count + 1;
+         idOf.put(s, id);
+         addTrigrams(s, id);
+      }
+      int n = postingCounts[id];
+      if (n == postings[id].length) {
+         postings[id] = Arrays.copyOf(postings[id], 2 * n);
+      }
+      postings[id][n] = position;
+      postingCounts[id] = n + 1;
+      return id;
+   }
+
+   /** Renumbers the positions in every posting list: position p becomes
+   **  newPositions[p], or is dropped if newPositions[p] is -1.  (The
+   **  renumbering must preserve the order of the positions it keeps.)  Each
+   **  list is replaced rather than modified, so arrays previously obtained
+   **  from postingsOf() are unaffected.
+   */
+   public void renumber(int[] newPositions) {
+      for (int id = 0; id < count; id++) {
+         int[] list = new int[Math.max(2, postingCounts[id])];
+         int n = 0;
+         for (int i = 0; i < postingCounts[id]; i++) {
+            int p = newPositions[postings[id][i]];
+            if (p != -1) {
+               list[n] = p;
+               n = n + 1;
+            }
+         }
+         postings[id] = list;
+         postingCounts[id] = n;
+      }
+   }
+
+// -------------------------------------------------------------------------------------
+// P r i v a t e   M e t h o d s
+// -------------------------------------------------------------------------------------
+
+   /* Brings sorted[] and sortedIds[] up to date, by sorting the strings added
+   ** since they were last brought up to date and merging them in.  (The arrays
+   ** are replaced rather than modified.)
+   */
+   private void sortNew() {
+      int m = sorted.length;
+      if (m != count) {
+         String[] added = Arrays.copyOfRange(strings, m, count);
+         if (added.length >= IndexSort.PARALLEL_THRESHOLD) {
+            Arrays.parallelSort(added);
+         }
+         else {
+            Arrays.sort(added);
+         }
+         String[] mergedStrings = new String[count];
+         int[] mergedIds = new int[count];
+         int i = 0;
+         int j = 0;
+         for (int k = 0; k < count; k++) {   // (the strings are distinct)
+            if (j == added.length || (i != m && sorted[i].compareTo(added[j]) < 0)) {
+               mergedStrings[k] = sorted[i];
+               mergedIds[k] = sortedIds[i];
+               i = i + 1;
+            }
+            else {
+               mergedStrings[k] = added[j];
+               mergedIds[k] = idOf.get(added[j]);
+               j = j + 1;
+            }
+         }
+         sorted = mergedStrings;
+         sortedIds = mergedIds;
+      }
+   }
+
+   /* Returns the least r in lo..count-1 for which the given condition holds,
+   ** or count if there is none.  The condition is assumed to be monotone over
+   ** lo..count-1 (i.e., once it holds for some r, it holds for all larger r).
+   */
+   private int firstSortedFrom(int lo, IntPredicate condition) {
+      int hi = count;
+      while (lo != hi) {
+         int mid = (lo + hi) >>> 1;
+         if (condition.test(mid)) {
+            hi = mid;
+         }
+         else {
+            lo = mid + 1;
+         }
+      }
+      return lo;
+   }
+
+   /* Records, in the trigram index, that the string with the given id contains
+   ** each of its trigrams.
+   */
+   private void addTrigrams(String s, int id) {
+      for (int i = 0; i + 3 <= s.length(); i++) {
+         Long key = trigramAt(s, i);
+         IdList list = trigrams.get(key);
+         if (list == null) {
+            list = new IdList();
+            trigrams.put(key, list);
+         }
+         list.add(id);
+      }
+   }
+
+   /* Returns the three characters of s starting at position i packed into a
+   ** single long.
+   */
+   private static long trigramAt(String s, int i) {
+      return ((long) s.charAt(i) << 32) | ((long) s.charAt(i+1) << 16) | s.charAt(i+2);
+   }
+
+// -------------------------------------------------------------------------------------
+// P r i v a t e   C l a s s
+// -------------------------------------------------------------------------------------
+
+   /* A growable, ascending list of ids without duplicates.
+   */
+   private static class IdList {
+      private int[] ids = new int[2];
+      private int count = 0;
+
+      /* Appends the given id, unless it is already the last one.  (As ids are
+      ** added in ascending order, this keeps the list free of duplicates.)
+      */
+      private void add(int id) {
+         if (count == 0 || ids[count-1] != id) {
+            if (count == ids.length) {
+               ids = Arrays.copyOf(ids, 2 * count);
+            }
+            ids[count] = id;
+            count = count + 1;
+         }
+      }
+   }
+
+}
@@ -0,0 +1,376 @@
+package eventcollection;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** This class holds the JMH benchmarks for EventCollection and the classes it
+**  depends upon (which the build copies into this package; see pom.xml):
+**
+**  --new CalendarDate(String) for each of the seven forms of date string,
+**    and CalendarDateParser.parse() (adaptive) for the same strings, and
+**    parse() with a CalendarDateCache for strings that recur
+**  --CalendarDate.compareTo() between dates a year or so apart (a bounded
+**    range, as the time it takes may grow with the distance)
+**  --new Event(String)
+**  --insert(): filling a collection of n events
+**  --iteration in each of the four iteration modes: reset() followed by
+**    hasNext()/next() over all n events, both warm (the ordering having been
+**    built) and cold (the first reset() in the mode, which builds it)
+**  --saving a collection to a file and loading it back, done in the same
+**    way as by EventCollectionGUI (one event per line, via toString() and
+**    the Event(String) constructor), and loading it back by means of an
+**    EventLoader, and lazily (followed by a first page in order of date)
+**
+**  The benchmarks on single values report the time per value; those on
+**  collections, the time per collection of n events, n being 1000, 100000
+**  and 10000000 unless chosen otherwise, e.g.
+**
+**     java -jar target/benchmarks.jar -p n=1000,100000
+**
+**  The events are made by an EventGenerator from a fixed seed, so that runs
+**  can be compared with one another.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class EventCollectionBenchmark {
+
+   // class constants
+   // ---------------
+   private static final int SAMPLE_SIZE = 100000;  // # of strings parsed, etc.,
+                                                   // per invocation of the
+                                                   // per-value benchmarks
+   private static final long SEED = 20151024L;
+
+
+   // benchmarks on single values
+   // ---------------------------
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.NANOSECONDS)
+   @OperationsPerInvocation(SAMPLE_SIZE)
+   public void newCalendarDate(DateStrings s, Blackhole bh) {
+      for (String string : s.strings) {
+         bh.consume(new CalendarDate(string));
+      }
+   }
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.NANOSECONDS)
+   @OperationsPerInvocation(SAMPLE_SIZE)
+   public void adaptiveParse(DateStrings s, Blackhole bh) {
+      for (String string : s.strings) {
+         bh.consume(s.parser.parse(string));
+      }
+   }
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.NANOSECONDS)
+   @OperationsPerInvocation(SAMPLE_SIZE)
+   public void cachedParse(Values v, Blackhole bh) {
+      CalendarDateParser parser = new CalendarDateParser(CalendarDateParser.LENIENT);
+      parser.setCache(new CalendarDateCache(4096));
+      for (String string : v.repeated) {
+         bh.consume(parser.parse(string));
+      }
+   }
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.NANOSECONDS)
+   @OperationsPerInvocation(SAMPLE_SIZE)
+   public void compareTo(Values v, Blackhole bh) {
+      for (int i = 0; i < SAMPLE_SIZE; i++) {
+         bh.consume(v.dates[i].compareTo(v.distant[i]));
+      }
+   }
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.NANOSECONDS)
+   @OperationsPerInvocation(SAMPLE_SIZE)
+   public void newEvent(Values v, Blackhole bh) {
+      for (String line : v.lines) {
+         bh.consume(new Event(line));
+      }
+   }
+
+   // benchmarks on collections
+   // -------------------------
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.MILLISECONDS)
+   public EventCollection insert(Events s) {
+      return filled(s.events);
+   }
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.MILLISECONDS)
+   public void iterateByInsertion(Events s, Blackhole bh) {
+      iterate(s.ec, EventCollection.ITERATE_BY_INSERTION, bh);
+   }
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.MILLISECONDS)
+   public void iterateByDate(Events s, Blackhole bh) {
+      iterate(s.ec, EventCollection.ITERATE_BY_DATE, bh);
+   }
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.MILLISECONDS)
+   public void iterateByPrincipal(Events s, Blackhole bh) {
+      iterate(s.ec, EventCollection.ITERATE_BY_PRINCIPAL, bh);
+   }
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.MILLISECONDS)
+   public void iterateByDescription(Events s, Blackhole bh) {
+      iterate(s.ec, EventCollection.ITERATE_BY_DESCRIPTION, bh);
+   }
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.MILLISECONDS)
+   public void iterateByInsertionCold(FreshEvents s, Blackhole bh) {
+      iterate(s.ec, EventCollection.ITERATE_BY_INSERTION, bh);
+   }
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.MILLISECONDS)
+   public void iterateByDateCold(FreshEvents s, Blackhole bh) {
+      iterate(s.ec, EventCollection.ITERATE_BY_DATE, bh);
+   }
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.MILLISECONDS)
+   public void iterateByPrincipalCold(FreshEvents s, Blackhole bh) {
+      iterate(s.ec, EventCollection.ITERATE_BY_PRINCIPAL, bh);
+   }
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.MILLISECONDS)
+   public void iterateByDescriptionCold(FreshEvents s, Blackhole bh) {
+      iterate(s.ec, EventCollection.ITERATE_BY_DESCRIPTION, bh);
+   }
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.MILLISECONDS)
+   public void save(Events s) throws IOException {
+      save(s.ec, s.saved);
+   }
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.MILLISECONDS)
+   public EventCollection load(Events s) throws IOException {
+      EventCollection result = new EventCollection(s.n);
+      Scanner input = new Scanner(s.file);
+      try {
+         while (input.hasNextLine()) {
+            result.insert(new Event(input.nextLine()));
+         }
+      }
+      finally {
+         input.close();
+      }
+      return result;
+   }
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.MILLISECONDS)
+   public EventCollection loadWithLoader(Events s) throws IOException {
+      return load(s.file, s.n, false);
+   }
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.MILLISECONDS)
+   public Object loadLazilyAndPageByDate(Events s) throws IOException {
+      return load(s.file, s.n, true).page(EventCollection.ITERATE_BY_DATE, 0, 20);
+   }
+
+   // states
+   // ------
+
+   /* The date strings of SAMPLE_SIZE generated events in one of the forms,
+   ** and an adaptive parser for them.
+   */
+   @State(Scope.Benchmark)
+   public static class DateStrings {
+      @Param({"YYYYMMDD", "yMMDD", "Month_d_y", "d_Month_y", "m_d_y", "d_Mon_y", "y_m_d"})
+      public String form;
+
+      String[] strings;
+      CalendarDateParser parser;
+
+      @Setup
+      public void setUp() {
+         int f = 0;
+         while (!CalendarDateParser.nameOfForm(f).equals(form)) {
+            f++;
+         }
+         Event[] events = generateEvents(SAMPLE_SIZE);
+         strings = new String[SAMPLE_SIZE];
+         for (int i = 0; i < SAMPLE_SIZE; i++) {
+            strings[i] = EventGenerator.dateInForm(events[i].dateOf(), f);
+         }
+         parser = new CalendarDateParser(CalendarDateParser.LENIENT);
+         parser.setAdaptive(true);
+      }
+   }
+
+   /* The values for the other per-value benchmarks: SAMPLE_SIZE generated
+   ** dates, dates about a year before or after them, strings for only a year's
+   ** worth of dates (each recurring many times), and lines with dates in a
+   ** mix of forms.
+   */
+   @State(Scope.Benchmark)
+   public static class Values {
+      CalendarDate[] dates;
+      CalendarDate[] distant;
+      String[] repeated;
+      String[] lines;
+
+      @Setup
+      public void setUp() {
+         Event[] events = generateEvents(SAMPLE_SIZE);
+         dates = new CalendarDate[SAMPLE_SIZE];
+         distant = new CalendarDate[SAMPLE_SIZE];
+         for (int i = 0; i < SAMPLE_SIZE; i++) {
+            dates[i] = events[i].dateOf();
+            int year = dates[i].getYear() + ((i % 2 == 0) ? 1 : -1);
+            distant[i] = new CalendarDate(year, dates[i].getMonth(), 1);
+         }
+         repeated = new String[SAMPLE_SIZE];
+         for (int i = 0; i < SAMPLE_SIZE; i++) {
+            repeated[i] = EventGenerator.dateInForm(dates[i % 365], EventGenerator.Y_M_D);
+         }
+         EventGenerator generator = new EventGenerator(SEED);
+         lines = new String[SAMPLE_SIZE];
+         for (int i = 0; i < SAMPLE_SIZE; i++) {
+            lines[i] = generator.nextLine();
+         }
+      }
+   }
+
+   /* n generated events, a collection of them (whose orderings, once built,
+   ** are kept from one invocation to the next), the file to which they were
+   ** saved, and a file to save them to again.
+   */
+   @State(Scope.Benchmark)
+   public static class Events {
+      @Param({"1000", "100000", "10000000"})
+      public int n;
+
+      Event[] events;
+      EventCollection ec;
+      File file;
+      File saved;
+
+      @Setup
+      public void setUp() throws IOException {
+         events = generateEvents(n);
+         ec = filled(events);
+         file = File.createTempFile("events", ".txt");
+         saved = File.createTempFile("events-saved", ".txt");
+         save(ec, file);
+      }
+
+      @TearDown
+      public void tearDown() {
+         file.delete();
+         saved.delete();
+      }
+   }
+
+   /* A collection of the n events of an Events state, filled anew before each
+   ** invocation, so that its orderings have yet to be built.
+   */
+   @State(Scope.Benchmark)
+   public static class FreshEvents {
+      EventCollection ec;
+
+      @Setup(Level.Invocation)
+      public void setUp(Events s) {
+         ec = filled(s.events);
+      }
+   }
+
+   // private methods
+   // ---------------
+
+   /* Returns a collection of (just) the given events.
+   */
+   private static EventCollection filled(Event[] events) {
+      EventCollection result = new EventCollection(events.length);
+      for (Event e : events) {
+         result.insert(e);
+      }
+      return result;
+   }
+
+   /* Iterates over all of the events in the given collection in the given
+   ** iteration mode.
+   */
+   private static void iterate(EventCollection ec, int iterMode, Blackhole bh) {
+      ec.reset(iterMode);
+      while (ec.hasNext()) {
+         bh.consume(ec.next());
+      }
+   }
+
+   /* Writes the events of the given collection, in order of insertion, to the
+   ** given file, one per line.
+   */
+   private static void save(EventCollection ec, File file) throws IOException {
+      BufferedWriter out = new BufferedWriter(new FileWriter(file));
+      try {
+         ec.reset();
+         while (ec.hasNext()) {
+            out.write(ec.next().toString());
+            out.newLine();
+         }
+      }
+      finally {
+         out.close();
+      }
+   }
+
+   /* Returns a collection (of the given capacity) of the events loaded from
+   ** the given file by an EventLoader, lazily or not.
+   */
+   private static EventCollection load(File file, int capacity, boolean lazy) throws IOException {
+      EventCollection result = new EventCollection(capacity);
+      EventLoader loader = new EventLoader(new CalendarDateParser(CalendarDateParser.LENIENT));
+      loader.setLazy(lazy);
+      loader.load(file, result);
+      return result;
+   }
+
+   /* Returns n events generated from SEED, with one distinct principal for
+   ** (about) every ten events.
+   */
+   private static Event[] generateEvents(int n) {
+      EventGenerator generator = new EventGenerator(SEED);
+      generator.setPrincipals(Math.max(1, n / 10), 1.0);
+      return generator.events(n);
+   }
+
+}
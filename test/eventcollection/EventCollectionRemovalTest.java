@@ -0,0 +1,115 @@
+package eventcollection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests removal from an EventCollection (tombstones, and the compaction
+**  that reclaims them) against a plain list of the events' descriptions
+**  (toString()) as the reference.
+*/
+class EventCollectionRemovalTest {
+
+   @Test
+   void removalsMatchTheReference() {
+      Random random = new Random(38);
+      EventCollection ec = new EventCollection(16);
+      List<String> reference = new ArrayList<String>();
+      for (int i = 0; i < 5000; i++) {
+         if (random.nextInt(3) == 0 && !reference.isEmpty()) {
+            String victim = reference.get(random.nextInt(reference.size()));
+            assertEquals(true, ec.remove(new Event(victim)));
+            reference.remove(victim);   // (the earliest inserted, as remove() does)
+         }
+         else {
+            Event e = event(random);
+            ec.ensureCapacity(ec.sizeOf() + 1);
+            ec.insert(e);
+            reference.add(e.toString());
+         }
+      }
+      assertEquals(reference.size(), ec.sizeOf());
+      assertEquals(reference, strings(ec.stream(EventOrder.BY_INSERTION)));
+      assertEquals(sorted(reference, Comparator.comparing(s -> new Event(s).principalOf())),
+                   strings(ec.stream(EventOrder.BY_PRINCIPAL)));
+      assertEquals(reference.stream().filter(s -> s.contains(",P3,")).collect(Collectors.toList()),
+                   strings(ec.byPrincipal("P3")));
+      assertEquals(false, ec.remove(new Event("20991231,Nobody,Nothing")));
+   }
+
+   @Test
+   void snapshotsSurviveRemovalAndCompaction() {
+      Random random = new Random(380);
+      EventCollection ec = new EventCollection(4000);
+      List<String> reference = new ArrayList<String>();
+      for (int i = 0; i < 4000; i++) {
+         Event e = event(random);
+         ec.insert(e);
+         reference.add(e.toString());
+      }
+      EventCollection.Snapshot s = ec.snapshot();
+      List<String> before = new ArrayList<String>(reference);
+      for (int i = 0; i < 2000; i++) {   // (enough to compact several times)
+         String victim = reference.remove(random.nextInt(reference.size()));
+         ec.remove(new Event(victim));
+      }
+      assertEquals(before, strings(s.stream(EventOrder.BY_INSERTION)));
+      assertEquals(sorted(before, Comparator.comparingInt(d -> new Event(d).dateOf().toKey())),
+                   strings(s.stream(EventOrder.BY_DATE)));
+      assertEquals(reference, strings(ec.stream(EventOrder.BY_INSERTION)));
+   }
+
+   @Test
+   void lookupConsumedAfterCompaction() {
+      EventCollection ec = new EventCollection(8);
+      List<String> p1 = new ArrayList<String>();
+      for (int i = 0; i < 8; i++) {
+         Event e = new Event("2000010" + (i + 1) + ",P" + (i % 2) + ",D" + i);
+         ec.insert(e);
+         if (i % 2 == 1) {
+            p1.add(e.toString());
+         }
+      }
+      Stream<Event> byPrincipal = ec.byPrincipal("P1");
+      Stream<Event> byPrefix = ec.byPrincipalPrefix("P1");
+      Stream<Event> bySubstring = ec.snapshot().byDescriptionSubstring("D");
+      List<String> all = strings(ec.stream(EventOrder.BY_INSERTION));
+      for (int i = 0; i < 6; i = i + 2) {   // the third removal compacts
+         ec.remove(new Event("2000010" + (i + 1) + ",P0,D" + i));
+      }
+      assertEquals(p1, strings(byPrincipal));
+      assertEquals(p1, strings(byPrefix));
+      assertEquals(all, strings(bySubstring));
+   }
+
+   /* Returns a random event, with few enough principals and dates that many
+   ** events share them.
+   */
+   private static Event event(Random random) {
+      return new Event(new CalendarDate(1990 + random.nextInt(20), 1 + random.nextInt(12), 1 + random.nextInt(28)),
+                       "P" + random.nextInt(10), "D" + random.nextInt(50));
+   }
+
+   /* Returns the given events' descriptions (toString()), in order.
+   */
+   private static List<String> strings(Stream<Event> events) {
+      return events.map(Event::toString).collect(Collectors.toList());
+   }
+
+   /* Returns the given descriptions of events sorted by the given key, ties
+   ** being left in the order given (i.e., of insertion).
+   */
+   private static List<String> sorted(List<String> events, Comparator<String> key) {
+      List<String> result = new ArrayList<String>(events);
+      result.sort(key);
+      return result;
+   }
+
+}
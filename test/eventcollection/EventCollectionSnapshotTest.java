@@ -0,0 +1,106 @@
+package eventcollection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests that snapshots of an EventCollection (and the iterations over the
+**  collection, which run over snapshots) are unaffected by later insertions
+**  and removals, against a plain list of the events' descriptions
+**  (toString()) as the reference.
+*/
+class EventCollectionSnapshotTest {
+
+   @Test
+   void snapshotIgnoresLaterInsertionsAndRemovals() {
+      Random random = new Random(26);
+      EventCollection ec = new EventCollection(16);
+      List<String> reference = new ArrayList<String>();
+      List<EventCollection.Snapshot> snapshots = new ArrayList<EventCollection.Snapshot>();
+      List<List<String>> expected = new ArrayList<List<String>>();
+      for (int i = 0; i < 3000; i++) {
+         if (random.nextInt(4) == 0 && !reference.isEmpty()) {
+            String victim = reference.get(random.nextInt(reference.size()));
+            ec.remove(new Event(victim));
+            reference.remove(victim);
+         }
+         else {
+            Event e = event(random);
+            ec.ensureCapacity(ec.sizeOf() + 1);
+            ec.insert(e);
+            reference.add(e.toString());
+         }
+         if (i % 500 == 0) {
+            snapshots.add(ec.snapshot());
+            expected.add(new ArrayList<String>(reference));
+         }
+      }
+      Comparator<String> byDate = Comparator.comparingInt(s -> new Event(s).dateOf().toKey());
+      for (int j = 0; j < snapshots.size(); j++) {
+         EventCollection.Snapshot s = snapshots.get(j);
+         assertEquals(expected.get(j).size(), s.sizeOf());
+         assertEquals(expected.get(j), strings(s.stream(EventOrder.BY_INSERTION)));
+         assertEquals(sorted(expected.get(j), byDate), strings(s.stream(EventOrder.BY_DATE)));
+      }
+   }
+
+   @Test
+   void iterationCoversTheEventsWhenItBegan() {
+      EventCollection ec = new EventCollection(100);
+      List<String> reference = new ArrayList<String>();
+      for (int i = 0; i < 10; i++) {
+         Event e = new Event("200001" + (10 + i) + ",P" + (i % 3) + ",D" + i);
+         ec.insert(e);
+         reference.add(e.toString());
+      }
+      List<String> iterated = new ArrayList<String>();
+      while (ec.hasNext()) {   // (before any reset(): in order of insertion)
+         Event e = ec.next();
+         iterated.add(e.toString());
+         ec.insert(new Event("20010101,Later,X"));
+         ec.remove(e);
+      }
+      assertEquals(reference, iterated);
+      assertEquals(10, ec.sizeOf());
+
+      ec.reset(EventCollection.ITERATE_BY_DESCRIPTION);
+      ec.insert(new Event("20010102,Latest,A"));
+      int visited = 0;
+      while (ec.hasNext()) {
+         assertEquals("20010101,Later,X", ec.next().toString());
+         visited = visited + 1;
+      }
+      assertEquals(10, visited);
+   }
+
+   /* Returns a random event, with few enough principals and dates that many
+   ** events share them.
+   */
+   private static Event event(Random random) {
+      return new Event(new CalendarDate(1990 + random.nextInt(20), 1 + random.nextInt(12), 1 + random.nextInt(28)),
+                       "P" + random.nextInt(10), "D" + random.nextInt(50));
+   }
+
+   /* Returns the given events' descriptions (toString()), in order.
+   */
+   private static List<String> strings(Stream<Event> events) {
+      return events.map(Event::toString).collect(Collectors.toList());
+   }
+
+   /* Returns the given descriptions of events sorted by the given key, ties
+   ** being left in the order given (i.e., of insertion).
+   */
+   private static List<String> sorted(List<String> events, Comparator<String> key) {
+      List<String> result = new ArrayList<String>(events);
+      result.sort(key);
+      return result;
+   }
+
+}
@@ -0,0 +1,54 @@
+package eventcollection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests that an EventFileFollower inserting into a collection that rejects
+**  duplicates loses only the duplicates of a batch, not the events after
+**  them.
+*/
+class EventFileFollowerTest {
+
+   @TempDir
+   Path directory;
+
+   @Test
+   void rejectedDuplicatesLoseOnlyThemselves() throws IOException {
+      Path file = directory.resolve("events.log");
+      EventCollection ec = new EventCollection(4, EventCollection.DUPLICATES_REJECTED);
+      try (EventFileFollower follower = new EventFileFollower(file.toFile(), ec)) {
+         append(file, "20150101,A,x", "20150102,B,y", "20150101,A,x", "20150103,C,z");
+         assertEquals(3, follower.poll());
+         assertEquals(1, follower.insertFailuresOf());
+         assertTrue(follower.lastFailureOf() instanceof IllegalArgumentException);
+         append(file, "20150104,D,w", "20150102,B,y", "20150105,E,v", "20150104,D,w", "20150106,F,u");
+         assertEquals(3, follower.poll());
+         assertEquals(3, follower.insertFailuresOf());
+         assertEquals(6, follower.eventsInsertedOf());
+         assertEquals(Arrays.asList("20150101,A,x", "20150102,B,y", "20150103,C,z",
+                                    "20150104,D,w", "20150105,E,v", "20150106,F,u"),
+                      ec.stream(EventOrder.BY_INSERTION).map(Event::toString).collect(Collectors.toList()));
+         assertEquals(0, follower.poll());
+      }
+   }
+
+   /* Appends the given lines to the given file.
+   */
+   private static void append(Path file, String... lines) throws IOException {
+      List<String> list = Arrays.asList(lines);
+      Files.write(file, list, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+   }
+
+}
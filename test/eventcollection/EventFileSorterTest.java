@@ -0,0 +1,93 @@
+package eventcollection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests that an EventFileSorter whose input spans several runs sorts it
+**  exactly as an EventCollection holding all of the input would, ties
+**  between runs included.
+*/
+class EventFileSorterTest {
+
+   private static final int LINES = 50000;
+   private static final long BUDGET = 3L << 20;   // (the smallest allowed)
+
+   @TempDir
+   Path directory;
+
+   @Test
+   void descendingInsertionReversesTheInput() throws IOException {
+      List<String> lines = lines();
+      List<String> expected = new ArrayList<String>(lines);
+      Collections.reverse(expected);
+      assertEquals(expected, sorted(EventOrder.byDescending(EventOrder.INSERTION), lines));
+   }
+
+   @Test
+   void descendingInsertionBreaksTiesLatestFirst() throws IOException {
+      EventOrder order = EventOrder.by(EventOrder.DATE).thenDescending(EventOrder.INSERTION);
+      List<String> lines = lines();
+      assertEquals(collected(order, lines), sorted(order, lines));
+   }
+
+   @Test
+   void ascendingOrdersBreakTiesEarliestFirst() throws IOException {
+      for (EventOrder order : new EventOrder[] {EventOrder.BY_INSERTION, EventOrder.BY_PRINCIPAL,
+                                                EventOrder.byDescending(EventOrder.DATE)}) {
+         List<String> lines = lines();
+         assertEquals(collected(order, lines), sorted(order, lines), order.toString());
+      }
+   }
+
+   /* Returns LINES lines describing events with few dates and principals (so
+   ** that most of them tie with many others), each with a description of
+   ** its own.
+   */
+   private static List<String> lines() {
+      List<String> result = new ArrayList<String>();
+      for (int i = 0; i < LINES; i++) {
+         result.add(new Event(new CalendarDate(2001, 1, 1 + i % 5), "P" + (i % 7), "D" + i).toString());
+      }
+      return result;
+   }
+
+   /* Returns the lines of the output of a sorter (with the smallest budget)
+   ** sorting the given lines into the given order, checking that they make
+   ** up several runs.
+   */
+   private List<String> sorted(EventOrder order, List<String> lines) throws IOException {
+      File input = directory.resolve("input.txt").toFile();
+      File output = directory.resolve("output.txt").toFile();
+      Files.write(input.toPath(), lines);
+      EventFileSorter sorter = new EventFileSorter(order);
+      sorter.setMemoryBudget(BUDGET);
+      sorter.setTempDirectory(directory.toFile());
+      sorter.sort(input, output);
+      assertTrue(sorter.runsOf() > 1, "runs: " + sorter.runsOf());
+      return Files.readAllLines(output.toPath());
+   }
+
+   /* Returns the given lines in the given order, as iterated over by an
+   ** EventCollection holding the events they describe.
+   */
+   private static List<String> collected(EventOrder order, List<String> lines) {
+      EventCollection ec = new EventCollection(lines.size());
+      for (String line : lines) {
+         ec.insert(new Event(line));
+      }
+      return ec.stream(order).map(Event::toString).collect(Collectors.toList());
+   }
+
+}
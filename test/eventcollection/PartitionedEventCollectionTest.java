@@ -0,0 +1,122 @@
+package eventcollection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests that a PartitionedEventCollection, some of whose partitions are
+**  evicted to files (and loaded back), yields its events in the order that
+**  a plain list of them (in order of insertion, sorted stably by the
+**  order's other keys) gives.
+*/
+class PartitionedEventCollectionTest {
+
+   @TempDir
+   Path directory;
+
+   @Test
+   void evictionAndReloadKeepEveryOrder() throws IOException {
+      for (int partitioning : new int[] {PartitionedEventCollection.PARTITION_BY_YEAR,
+                                         PartitionedEventCollection.PARTITION_BY_DECADE}) {
+         Random random = new Random(39 + partitioning);
+         PartitionedEventCollection pc = new PartitionedEventCollection(partitioning);
+         List<String> reference = new ArrayList<String>();
+         insert(random, pc, reference, 8000);
+         int[] keys = pc.partitionKeys();
+         for (int i = 0; i < keys.length; i = i + 2) {
+            pc.evict(keys[i], file(partitioning + "-" + keys[i]));
+         }
+         insert(random, pc, reference, 2000);   // (reloading some of them)
+         for (int i = 1; i < keys.length; i = i + 3) {
+            pc.evict(keys[i], file(partitioning + "-" + keys[i] + "b"));
+         }
+         assertEquals(reference.size(), pc.sizeOf());
+         assertOrders(reference, pc);
+         for (int key : keys) {
+            pc.load(key);
+         }
+         assertOrders(reference, pc);
+      }
+   }
+
+   /* Inserts n random events into the collection and the reference,
+   ** removing one of the events now and then from both.
+   */
+   private static void insert(Random random, PartitionedEventCollection pc, List<String> reference, int n) {
+      for (int i = 0; i < n; i++) {
+         Event e = new Event(new CalendarDate(1985 + random.nextInt(30), 1 + random.nextInt(12), 1 + random.nextInt(3)),
+                             "P" + random.nextInt(30), "D" + random.nextInt(4));
+         pc.insert(e);
+         reference.add(e.toString());
+         if (random.nextInt(10) == 0) {
+            String victim = reference.get(random.nextInt(reference.size()));
+            assertEquals(true, pc.remove(new Event(victim)));
+            reference.remove(victim);
+         }
+      }
+   }
+
+   /* Checks that the collection's streams in several orders (including
+   ** orders with a descending insertion key), its iteration and between()
+   ** are the given events, in order of insertion, sorted accordingly.
+   */
+   private static void assertOrders(List<String> inserted, PartitionedEventCollection pc) {
+      List<String> reversed = new ArrayList<String>(inserted);
+      Collections.reverse(reversed);
+      Comparator<String> byPrincipal = Comparator.comparing(s -> new Event(s).principalOf());
+      Comparator<String> byDate = Comparator.comparingInt(s -> new Event(s).dateOf().toKey());
+      assertEquals(inserted, strings(pc.stream(EventOrder.BY_INSERTION)));
+      assertEquals(reversed, strings(pc.stream(EventOrder.byDescending(EventOrder.INSERTION))));
+      assertEquals(sorted(inserted, byPrincipal), strings(pc.stream(EventOrder.BY_PRINCIPAL)));
+      assertEquals(sorted(reversed, byPrincipal),
+                   strings(pc.stream(EventOrder.by(EventOrder.PRINCIPAL).thenDescending(EventOrder.INSERTION))));
+      assertEquals(sorted(inserted, byDate), strings(pc.stream(EventOrder.BY_DATE)));
+      List<String> iterated = new ArrayList<String>();
+      pc.reset();
+      while (pc.hasNext()) {
+         iterated.add(pc.next().toString());
+      }
+      assertEquals(inserted, iterated);
+      CalendarDate from = new CalendarDate(1990, 6, 1);
+      CalendarDate to = new CalendarDate(2004, 2, 3);
+      assertEquals(sorted(inserted, byDate).stream()
+                      .filter(s -> new Event(s).dateOf().toKey() >= from.toKey() &&
+                                   new Event(s).dateOf().toKey() <= to.toKey())
+                      .collect(Collectors.toList()),
+                   strings(pc.between(from, to)));
+   }
+
+   /* Returns a file (in the temporary directory) with the given name.
+   */
+   private File file(String name) {
+      return directory.resolve(name + ".txt").toFile();
+   }
+
+   /* Returns the given events' descriptions (toString()), in order.
+   */
+   private static List<String> strings(Stream<Event> events) {
+      return events.map(Event::toString).collect(Collectors.toList());
+   }
+
+   /* Returns the given descriptions of events sorted by the given key, ties
+   ** being left in the order given.
+   */
+   private static List<String> sorted(List<String> events, Comparator<String> key) {
+      List<String> result = new ArrayList<String>(events);
+      result.sort(key);
+      return result;
+   }
+
+}
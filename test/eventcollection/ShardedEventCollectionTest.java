@@ -0,0 +1,141 @@
+package eventcollection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests that the shards of a ShardedEventCollection are merged into the
+**  order that a plain list of the events (in order of insertion, sorted
+**  stably by the order's other keys) gives, whether the events are handed
+**  over by one thread or by several at once.
+*/
+class ShardedEventCollectionTest {
+
+   private static final int THREADS = 4;
+   private static final int PER_THREAD = 5000;
+
+   @Test
+   void singleThreadMatchesTheReference() {
+      Random random = new Random(40);
+      List<String> reference = new ArrayList<String>();
+      try (ShardedEventCollection sc = new ShardedEventCollection(5)) {
+         for (int i = 0; i < 20000; i++) {
+            if (random.nextInt(40) == 0) {
+               List<Event> batch = new ArrayList<Event>();
+               for (int j = 0; j < 100; j++) {
+                  batch.add(event(random, "B" + i + "-" + j));
+               }
+               sc.insertAll(batch);
+               reference.addAll(strings(batch.stream()));
+            }
+            else {
+               Event e = event(random, "S" + i);
+               sc.insert(e);
+               reference.add(e.toString());
+            }
+         }
+         sc.flush();
+         assertOrders(reference, sc);
+      }
+   }
+
+   @Test
+   void concurrentProducersKeepTheirOwnOrder() throws InterruptedException {
+      try (ShardedEventCollection sc = new ShardedEventCollection(5)) {
+         List<Thread> producers = new ArrayList<Thread>();
+         for (int t = 0; t < THREADS; t++) {
+            String name = "T" + t;
+            Random random = new Random(t);
+            boolean batched = (t % 2 == 0);
+            producers.add(new Thread(() -> {
+               List<Event> batch = new ArrayList<Event>();
+               for (int i = 0; i < PER_THREAD; i++) {
+                  Event e = event(random, name + "-" + i);
+                  if (batched) {
+                     batch.add(e);
+                     if (batch.size() == 50) {
+                        sc.insertAll(batch);
+                        batch = new ArrayList<Event>();
+                     }
+                  }
+                  else {
+                     sc.insert(e);
+                  }
+               }
+            }));
+         }
+         for (Thread t : producers) {
+            t.start();
+         }
+         for (Thread t : producers) {
+            t.join();
+         }
+         sc.flush();
+         List<String> inserted = strings(sc.stream(EventOrder.BY_INSERTION));
+         assertEquals(THREADS * PER_THREAD, inserted.size());
+         for (int t = 0; t < THREADS; t++) {
+            String tag = ",T" + t + "-";
+            List<String> own = inserted.stream().filter(s -> s.contains(tag)).collect(Collectors.toList());
+            for (int i = 0; i < PER_THREAD; i++) {
+               assertEquals(true, own.get(i).endsWith(tag + i), own.get(i));
+            }
+         }
+         assertOrders(inserted, sc);
+      }
+   }
+
+   /* Checks that the collection's streams in several orders (including
+   ** orders with a descending insertion key) are the given events, in order
+   ** of insertion, sorted accordingly.
+   */
+   private static void assertOrders(List<String> inserted, ShardedEventCollection sc) {
+      List<String> reversed = new ArrayList<String>(inserted);
+      Collections.reverse(reversed);
+      Comparator<String> byPrincipal = Comparator.comparing(s -> new Event(s).principalOf());
+      Comparator<String> byDate = Comparator.comparingInt(s -> new Event(s).dateOf().toKey());
+      assertEquals(inserted, strings(sc.stream(EventOrder.BY_INSERTION)));
+      assertEquals(reversed, strings(sc.stream(EventOrder.byDescending(EventOrder.INSERTION))));
+      assertEquals(sorted(inserted, byPrincipal), strings(sc.stream(EventOrder.BY_PRINCIPAL)));
+      assertEquals(sorted(reversed, byDate),
+                   strings(sc.stream(EventOrder.by(EventOrder.DATE).thenDescending(EventOrder.INSERTION))));
+      CalendarDate from = new CalendarDate(2001, 3, 1);
+      CalendarDate to = new CalendarDate(2001, 9, 30);
+      assertEquals(sorted(inserted, byDate).stream()
+                      .filter(s -> new Event(s).dateOf().toKey() >= from.toKey() &&
+                                   new Event(s).dateOf().toKey() <= to.toKey())
+                      .collect(Collectors.toList()),
+                   strings(sc.between(from, to)));
+   }
+
+   /* Returns a random event with the given description, with few enough
+   ** principals and dates that many events share them.
+   */
+   private static Event event(Random random, String description) {
+      return new Event(new CalendarDate(2000 + random.nextInt(3), 1 + random.nextInt(12), 1 + random.nextInt(28)),
+                       "P" + random.nextInt(40), description);
+   }
+
+   /* Returns the given events' descriptions (toString()), in order.
+   */
+   private static List<String> strings(Stream<Event> events) {
+      return events.map(Event::toString).collect(Collectors.toList());
+   }
+
+   /* Returns the given descriptions of events sorted by the given key, ties
+   ** being left in the order given.
+   */
+   private static List<String> sorted(List<String> events, Comparator<String> key) {
+      List<String> result = new ArrayList<String>(events);
+      result.sort(key);
+      return result;
+   }
+
+}
@@ -0,0 +1,70 @@
+package eventcollection;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests that the alphabetical order of a StringIndex, kept up to date as
+**  strings are added between queries, agrees with a plain sorted list of
+**  the strings.
+*/
+class StringIndexTest {
+
+   @Test
+   void ranksAndPrefixesFollowAdditions() {
+      Random random = new Random(31);
+      StringIndex index = new StringIndex();
+      List<String> added = new ArrayList<String>();   // (in order of id)
+      for (int round = 0; round < 60; round++) {
+         int n = (round % 10 == 0) ? 500 : random.nextInt(20);
+         for (int i = 0; i < n; i++) {
+            String s = "s" + Integer.toString(random.nextInt(5000), 7);
+            index.add(s, round * 1000 + i);
+            if (!added.contains(s)) {
+               added.add(s);
+            }
+         }
+         List<String> alphabetical = new ArrayList<String>(added);
+         Collections.sort(alphabetical);
+         if (round % 2 == 0) {
+            int[] ranks = index.ranks();
+            assertEquals(added.size(), ranks.length);
+            for (int id = 0; id < added.size(); id++) {
+               assertEquals(alphabetical.indexOf(added.get(id)), ranks[id]);
+            }
+         }
+         String prefix = "s" + random.nextInt(7);
+         List<String> expected = new ArrayList<String>();
+         for (String s : alphabetical) {
+            if (s.startsWith(prefix)) {
+               expected.add(s);
+            }
+         }
+         List<String> found = new ArrayList<String>();
+         for (int id : index.idsWithPrefix(prefix)) {
+            found.add(index.stringOf(id));
+         }
+         assertEquals(expected, found, prefix);
+      }
+   }
+
+   @Test
+   void shortSubstringsAreFoundWithoutTrigrams() {
+      StringIndex index = new StringIndex();
+      String[] strings = {"Alpha", "Beta", "Gamma", "ab", "b"};
+      for (int i = 0; i < strings.length; i++) {
+         index.add(strings[i], i);
+      }
+      assertArrayEquals(new int[] {3, 4}, index.idsContaining("b"));
+      assertArrayEquals(new int[] {2}, index.idsContaining("mm"));
+      assertArrayEquals(new int[] {0}, index.idsContaining("lph"));
+      assertArrayEquals(new int[] {0, 1, 2, 3, 4}, index.idsContaining(""));
+   }
+
+}